@@ -0,0 +1,37 @@
+/*******************************************************************************
+ * Copyright (C) Her Majesty the Queen in Right of Canada, 
+ * as represented by the Minister of National Defence, 2018
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package ca.drdc.ivct.fom.base;
+
+import ca.drdc.ivct.fom.base.structs.AccelerationVectorStruct;
+import ca.drdc.ivct.fom.base.structs.AngularVelocityVectorStruct;
+
+/**
+ * Spatial representation of the dead reckoning algorithms carrying the
+ * acceleration and the rotation of the object, such as RVW (4).
+ */
+public interface RotatingSpatialRepresentation extends SpatialRepresentation {
+
+    /**
+     * @return AccelerationVectorStruct The magnitude of the change in linear velocity of the Entity over time
+     */
+    AccelerationVectorStruct getAccelerationVector();
+
+    /**
+     * @return AngularVelocityVectorStruct The rate at which the orientation of the Entity is changing over time
+     */
+    AngularVelocityVectorStruct getAngularVelocityVector();
+}
@@ -14,9 +14,14 @@ public class EventIdentifierStruct {
      */
     private int eventCount;
     /**
-     * Identification of the object issuing the event.
+     * Identification of the object issuing the event, computed from the numeric identifier on first use.
      */
     private String issuingObjectIdentifier;
+    /**
+     * Numeric identification of the object issuing the event, parsed from the string on first use.
+     * Stays null if the string is not a numeric identifier.
+     */
+    private ObjectIdentifierStruct issuingObject;
 
     /**
      * @param eventCount The increasing counter of weapon fires/detonations in the simulation
@@ -39,6 +44,15 @@ public class EventIdentifierStruct {
         this.issuingObjectIdentifier = issuingObjectIdentifier;
     }
 
+    /**
+     * @param eventCount The increasing counter of weapon fires/detonations in the simulation
+     * @param issuingObject The numeric ID of the entity who is launching the weapon fire/detonation
+     */
+    public EventIdentifierStruct(int eventCount, ObjectIdentifierStruct issuingObject) {
+        this.eventCount = eventCount;
+        this.issuingObject = issuingObject;
+    }
+
     public int getEventCount() {
         return eventCount;
     }
@@ -48,18 +62,37 @@ public class EventIdentifierStruct {
     }
 
     public String getIssuingObjectIdentifier() {
+        if (issuingObjectIdentifier == null && issuingObject != null) {
+            issuingObjectIdentifier = issuingObject.toString();
+        }
         return issuingObjectIdentifier;
     }
 
     public void setIssuingObjectIdentifier(String issuingObjectIdentifier) {
         this.issuingObjectIdentifier = issuingObjectIdentifier;
+        this.issuingObject = null;
+    }
+
+    /**
+     * @return the numeric ID of the issuing object, null if its string is not a numeric identifier
+     */
+    public ObjectIdentifierStruct getIssuingObject() {
+        if (issuingObject == null && issuingObjectIdentifier != null) {
+            issuingObject = ObjectIdentifierStruct.parse(issuingObjectIdentifier);
+        }
+        return issuingObject;
+    }
+
+    public void setIssuingObject(ObjectIdentifierStruct issuingObject) {
+        this.issuingObject = issuingObject;
+        this.issuingObjectIdentifier = null;
     }
 
     @Override
     public String toString() {
         return String.format(
             "Event [Id=%s EventCount=%s]",
-            issuingObjectIdentifier,
+            getIssuingObjectIdentifier(),
             eventCount
         );
     }
@@ -72,13 +105,18 @@ public class EventIdentifierStruct {
         EventIdentifierStruct that = (EventIdentifierStruct) o;
 
         if (eventCount != that.eventCount) return false;
+        ObjectIdentifierStruct issuer = getIssuingObject();
+        ObjectIdentifierStruct thatIssuer = that.getIssuingObject();
+        if (issuer != null || thatIssuer != null) return Objects.equals(issuer, thatIssuer);
         return Objects.equals(issuingObjectIdentifier, that.issuingObjectIdentifier);
     }
 
     @Override
     public int hashCode() {
         int result = eventCount;
-        result = 31 * result + (issuingObjectIdentifier != null ? issuingObjectIdentifier.hashCode() : 0);
+        ObjectIdentifierStruct issuer = getIssuingObject();
+        result = 31 * result + (issuer != null ? issuer.hashCode()
+            : issuingObjectIdentifier != null ? issuingObjectIdentifier.hashCode() : 0);
         return result;
     }
 }
@@ -0,0 +1,138 @@
+package ca.drdc.ivct.fom.base.structs;
+
+/**
+ * Numeric object identifier, "site.application.number" or "site.application",
+ * packed in a long so that it is copied and compared without string work.
+ * Each number is an unsigned 16 bits value, as in DIS.
+ */
+public final class ObjectIdentifierStruct {
+
+    private static final long THREE_PARTS = 1L << 48;
+
+    private static final int MAX_NUMBER = 0xFFFF;
+
+    private final long packed;
+
+    private ObjectIdentifierStruct(long packed) {
+        this.packed = packed;
+    }
+
+    /**
+     * @param site The site ID
+     * @param application The app ID
+     * @param number The entity or munition ID
+     * @return the identifier "site.application.number"
+     */
+    public static ObjectIdentifierStruct of(int site, int application, int number) {
+        return new ObjectIdentifierStruct(THREE_PARTS | pack(site, application) | (number & MAX_NUMBER));
+    }
+
+    /**
+     * @param site The site ID
+     * @param application The app ID
+     * @return the identifier "site.application", as issuing an event
+     */
+    public static ObjectIdentifierStruct of(int site, int application) {
+        return new ObjectIdentifierStruct(pack(site, application));
+    }
+
+    private static long pack(int site, int application) {
+        return ((long) (site & MAX_NUMBER) << 32) | ((long) (application & MAX_NUMBER) << 16);
+    }
+
+    /**
+     * @param packed a value returned by {@link #toLong()}
+     * @return the identifier of this value
+     */
+    public static ObjectIdentifierStruct fromLong(long packed) {
+        return new ObjectIdentifierStruct(packed);
+    }
+
+    /**
+     * Parse a dot separated identifier without regular expression.
+     * @param identifier "site.application.number" or "site.application"
+     * @return the identifier, null if the text is not two or three numbers of 16 bits separated by dots
+     */
+    public static ObjectIdentifierStruct parse(String identifier) {
+        if (identifier == null) {
+            return null;
+        }
+        int[] parts = new int[3];
+        int partCount = 0;
+        int value = -1;
+        for (int i = 0; i < identifier.length(); i++) {
+            char c = identifier.charAt(i);
+            if (c >= '0' && c <= '9') {
+                value = (value < 0 ? 0 : value * 10) + (c - '0');
+                if (value > MAX_NUMBER) {
+                    return null;
+                }
+            } else if (c == '.' && value >= 0 && partCount < 2) {
+                parts[partCount++] = value;
+                value = -1;
+            } else {
+                return null;
+            }
+        }
+        if (value < 0 || partCount == 0) {
+            return null;
+        }
+        parts[partCount++] = value;
+        return partCount == 3 ? of(parts[0], parts[1], parts[2]) : of(parts[0], parts[1]);
+    }
+
+    public int getSite() {
+        return (int) (packed >>> 32) & MAX_NUMBER;
+    }
+
+    public int getApplication() {
+        return (int) (packed >>> 16) & MAX_NUMBER;
+    }
+
+    /**
+     * @return the entity or munition ID, 0 for a "site.application" identifier
+     */
+    public int getNumber() {
+        return (int) packed & MAX_NUMBER;
+    }
+
+    /**
+     * @return true for "site.application.number", false for "site.application"
+     */
+    public boolean hasNumber() {
+        return (packed & THREE_PARTS) != 0;
+    }
+
+    /**
+     * @return the packed identifier, never negative
+     */
+    public long toLong() {
+        return packed;
+    }
+
+    /**
+     * @return the dot separated identifier
+     */
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder(17).append(getSite()).append('.').append(getApplication());
+        if (hasNumber()) {
+            builder.append('.').append(getNumber());
+        }
+        return builder.toString();
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(packed);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj)
+            return true;
+        if (obj == null || getClass() != obj.getClass())
+            return false;
+        return packed == ((ObjectIdentifierStruct) obj).packed;
+    }
+}
@@ -16,7 +16,7 @@
  *******************************************************************************/
 package ca.drdc.ivct.fom.base.structs;
 
-import ca.drdc.ivct.fom.base.SpatialRepresentation;
+import ca.drdc.ivct.fom.base.RotatingSpatialRepresentation;
 import ca.drdc.ivct.fom.der.DeadReckoningAlgorithm;
 
 /**
@@ -26,7 +26,7 @@ import ca.drdc.ivct.fom.der.DeadReckoningAlgorithm;
  *
  * @author mlavallee
  */
-public class SpatialRVStruct implements SpatialRepresentation {
+public class SpatialRVStruct implements RotatingSpatialRepresentation {
 
     /**
      * Dead reckoning algorithm
@@ -111,6 +111,7 @@ public class SpatialRVStruct implements SpatialRepresentation {
         this.velocityVector = velocityVector;
     }
 
+    @Override
     public AngularVelocityVectorStruct getAngularVelocityVector() {
         return angularVelocityVector;
     }
@@ -119,6 +120,7 @@ public class SpatialRVStruct implements SpatialRepresentation {
         this.angularVelocityVector = angularVelocityVector;
     }
 
+    @Override
     public AccelerationVectorStruct getAccelerationVector() {
         return accelerationVector;
     }
@@ -27,6 +27,10 @@ public class MunitionDetonation {
      * This must reference a valid Object instance.
      */
     private String firingObjectIdentifier;
+    /**
+     * Numeric form of firingObjectIdentifier, null if not computed yet or if the string is not a numeric identifier.
+     */
+    private ObjectIdentifierStruct firingObject;
     /**
      * The velocity vector of the munition at the moment of the detonation.
      */
@@ -41,6 +45,10 @@ public class MunitionDetonation {
      * set to the empty string (no characters). Refer to SISO-STD-001 section 7.8.6 for handling empty strings.
      */
     private String munitionObjectIdentifier;
+    /**
+     * Numeric form of munitionObjectIdentifier, null if not computed yet or if the string is not a numeric identifier.
+     */
+    private ObjectIdentifierStruct munitionObject;
     /**
      * The type of munition that is detonating.
      */
@@ -63,6 +71,10 @@ public class MunitionDetonation {
      * set to the empty string (no characters). Refer to SISO-STD-001 section 7.8.6 for handling empty strings.
      */
     private String targetObjectIdentifier;
+    /**
+     * Numeric form of targetObjectIdentifier, null if not computed yet or if the string is not a numeric identifier.
+     */
+    private ObjectIdentifierStruct targetObject;
     /**
      * The type of warhead on the munition.
      */
@@ -136,11 +148,30 @@ public class MunitionDetonation {
     }
 
     public String getFiringObjectIdentifier() {
+        if (firingObjectIdentifier == null && firingObject != null) {
+            firingObjectIdentifier = firingObject.toString();
+        }
         return firingObjectIdentifier;
     }
 
     public void setFiringObjectIdentifier(String firingObjectIdentifier) {
         this.firingObjectIdentifier = firingObjectIdentifier;
+        this.firingObject = null;
+    }
+
+    /**
+     * @return the numeric ID of the firing object, null if its string is not a numeric identifier
+     */
+    public ObjectIdentifierStruct getFiringObject() {
+        if (firingObject == null && firingObjectIdentifier != null) {
+            firingObject = ObjectIdentifierStruct.parse(firingObjectIdentifier);
+        }
+        return firingObject;
+    }
+
+    public void setFiringObject(ObjectIdentifierStruct firingObject) {
+        this.firingObject = firingObject;
+        this.firingObjectIdentifier = null;
     }
 
     public VelocityVectorStruct getFinalVelocityVector() {
@@ -160,11 +191,30 @@ public class MunitionDetonation {
     }
 
     public String getMunitionObjectIdentifier() {
+        if (munitionObjectIdentifier == null && munitionObject != null) {
+            munitionObjectIdentifier = munitionObject.toString();
+        }
         return munitionObjectIdentifier;
     }
 
     public void setMunitionObjectIdentifier(String munitionObjectIdentifier) {
         this.munitionObjectIdentifier = munitionObjectIdentifier;
+        this.munitionObject = null;
+    }
+
+    /**
+     * @return the numeric ID of the fired munition, null if its string is not a numeric identifier
+     */
+    public ObjectIdentifierStruct getMunitionObject() {
+        if (munitionObject == null && munitionObjectIdentifier != null) {
+            munitionObject = ObjectIdentifierStruct.parse(munitionObjectIdentifier);
+        }
+        return munitionObject;
+    }
+
+    public void setMunitionObject(ObjectIdentifierStruct munitionObject) {
+        this.munitionObject = munitionObject;
+        this.munitionObjectIdentifier = null;
     }
 
     public EntityTypeStruct getMunitionType() {
@@ -200,11 +250,30 @@ public class MunitionDetonation {
     }
 
     public String getTargetObjectIdentifier() {
+        if (targetObjectIdentifier == null && targetObject != null) {
+            targetObjectIdentifier = targetObject.toString();
+        }
         return targetObjectIdentifier;
     }
 
     public void setTargetObjectIdentifier(String targetObjectIdentifier) {
         this.targetObjectIdentifier = targetObjectIdentifier;
+        this.targetObject = null;
+    }
+
+    /**
+     * @return the numeric ID of the target, null if its string is not a numeric identifier
+     */
+    public ObjectIdentifierStruct getTargetObject() {
+        if (targetObject == null && targetObjectIdentifier != null) {
+            targetObject = ObjectIdentifierStruct.parse(targetObjectIdentifier);
+        }
+        return targetObject;
+    }
+
+    public void setTargetObject(ObjectIdentifierStruct targetObject) {
+        this.targetObject = targetObject;
+        this.targetObjectIdentifier = null;
     }
 
     public int getWarheadType() {
@@ -221,7 +290,7 @@ public class MunitionDetonation {
             "MunitionDetonation [Id=%s At=(Location=%s Target=%s) Type=%s]",
             eventIdentifier,
             detonationLocation,
-            targetObjectIdentifier,
+            getTargetObjectIdentifier(),
             munitionType
         );
     }
@@ -2,6 +2,7 @@ package ca.drdc.ivct.fom.warfare;
 
 import ca.drdc.ivct.fom.base.structs.EntityTypeStruct;
 import ca.drdc.ivct.fom.base.structs.EventIdentifierStruct;
+import ca.drdc.ivct.fom.base.structs.ObjectIdentifierStruct;
 import ca.drdc.ivct.fom.base.structs.VelocityVectorStruct;
 import ca.drdc.ivct.fom.base.structs.WorldLocationStruct;
 
@@ -30,6 +31,10 @@ public class WeaponFire {
      * This must reference a valid Object instance.
      */
     private String firingObjectIdentifier;
+    /**
+     * Numeric form of firingObjectIdentifier, null if not computed yet or if the string is not a numeric identifier.
+     */
+    private ObjectIdentifierStruct firingObject;
     /**
      * The type of fuse on the munition.
      */
@@ -44,6 +49,10 @@ public class WeaponFire {
      * set to the empty string (no characters). Refer to SISO-STD-001 section 7.8.6 for handling empty strings.
      */
     private String munitionObjectIdentifier;
+    /**
+     * Numeric form of munitionObjectIdentifier, null if not computed yet or if the string is not a numeric identifier.
+     */
+    private ObjectIdentifierStruct munitionObject;
     /**
      * The type of munition being fired.
      */
@@ -62,6 +71,10 @@ public class WeaponFire {
      * set to the empty string (no characters). Refer to SISO-STD-001 section 7.8.6 for handling empty strings.
      */
     private String targetObjectIdentifier;
+    /**
+     * Numeric form of targetObjectIdentifier, null if not computed yet or if the string is not a numeric identifier.
+     */
+    private ObjectIdentifierStruct targetObject;
     /**
      * The type of warhead fitted to the munition being fired.
      */
@@ -133,11 +146,30 @@ public class WeaponFire {
     }
 
     public String getFiringObjectIdentifier() {
+        if (firingObjectIdentifier == null && firingObject != null) {
+            firingObjectIdentifier = firingObject.toString();
+        }
         return firingObjectIdentifier;
     }
 
     public void setFiringObjectIdentifier(String firingObjectIdentifier) {
         this.firingObjectIdentifier = firingObjectIdentifier;
+        this.firingObject = null;
+    }
+
+    /**
+     * @return the numeric ID of the firing object, null if its string is not a numeric identifier
+     */
+    public ObjectIdentifierStruct getFiringObject() {
+        if (firingObject == null && firingObjectIdentifier != null) {
+            firingObject = ObjectIdentifierStruct.parse(firingObjectIdentifier);
+        }
+        return firingObject;
+    }
+
+    public void setFiringObject(ObjectIdentifierStruct firingObject) {
+        this.firingObject = firingObject;
+        this.firingObjectIdentifier = null;
     }
 
     public int getFuseType() {
@@ -157,11 +189,30 @@ public class WeaponFire {
     }
 
     public String getMunitionObjectIdentifier() {
+        if (munitionObjectIdentifier == null && munitionObject != null) {
+            munitionObjectIdentifier = munitionObject.toString();
+        }
         return munitionObjectIdentifier;
     }
 
     public void setMunitionObjectIdentifier(String munitionObjectIdentifier) {
         this.munitionObjectIdentifier = munitionObjectIdentifier;
+        this.munitionObject = null;
+    }
+
+    /**
+     * @return the numeric ID of the fired munition, null if its string is not a numeric identifier
+     */
+    public ObjectIdentifierStruct getMunitionObject() {
+        if (munitionObject == null && munitionObjectIdentifier != null) {
+            munitionObject = ObjectIdentifierStruct.parse(munitionObjectIdentifier);
+        }
+        return munitionObject;
+    }
+
+    public void setMunitionObject(ObjectIdentifierStruct munitionObject) {
+        this.munitionObject = munitionObject;
+        this.munitionObjectIdentifier = null;
     }
 
     public EntityTypeStruct getMunitionType() {
@@ -189,11 +240,30 @@ public class WeaponFire {
     }
 
     public String getTargetObjectIdentifier() {
+        if (targetObjectIdentifier == null && targetObject != null) {
+            targetObjectIdentifier = targetObject.toString();
+        }
         return targetObjectIdentifier;
     }
 
     public void setTargetObjectIdentifier(String targetObjectIdentifier) {
         this.targetObjectIdentifier = targetObjectIdentifier;
+        this.targetObject = null;
+    }
+
+    /**
+     * @return the numeric ID of the target, null if its string is not a numeric identifier
+     */
+    public ObjectIdentifierStruct getTargetObject() {
+        if (targetObject == null && targetObjectIdentifier != null) {
+            targetObject = ObjectIdentifierStruct.parse(targetObjectIdentifier);
+        }
+        return targetObject;
+    }
+
+    public void setTargetObject(ObjectIdentifierStruct targetObject) {
+        this.targetObject = targetObject;
+        this.targetObjectIdentifier = null;
     }
 
     public int getWarheadType() {
@@ -210,9 +280,9 @@ public class WeaponFire {
             "WeaponFire [Event=%s Type=%s From=(Id=%s Location=%s) To=%s]",
             eventIdentifier,
             munitionType,
-            firingObjectIdentifier,
+            getFiringObjectIdentifier(),
             firingLocation,
-            targetObjectIdentifier
+            getTargetObjectIdentifier()
         );
     }
 }
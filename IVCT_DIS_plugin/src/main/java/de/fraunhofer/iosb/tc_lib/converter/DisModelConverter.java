@@ -27,12 +27,17 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import ca.drdc.ivct.fom.base.BaseEntity;
+import ca.drdc.ivct.fom.base.RotatingSpatialRepresentation;
 import ca.drdc.ivct.fom.base.SpatialRepresentation;
 
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.RandomAccess;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Function;
 import java.util.stream.IntStream;
 
 /**
@@ -41,6 +46,11 @@ import java.util.stream.IntStream;
 public class DisModelConverter {
 
     private static Logger logger = LoggerFactory.getLogger(DisModelConverter.class);
+
+    /**
+     * Bulk conversions of up to this many pdus stay on the calling thread
+     */
+    public static final int BULK_SEQUENTIAL_CUTOFF = 2048;
     
     /**
      * Private construction to prevent instantiation
@@ -136,15 +146,49 @@ public class DisModelConverter {
         return receivedEntity;
     }
 
+    private static ObjectIdentifierStruct toObjectIdentifier(EntityID entityID) {
+        return ObjectIdentifierStruct.of(entityID.getSite(), entityID.getApplication(), entityID.getEntity());
+    }
+
+    /**
+     * @param identifier the numeric object identifier, null if its string is not numeric
+     * @param text the string form of the identifier, for the error message
+     * @return the DIS entity identifier
+     * @throws IllegalArgumentException if the identifier is not "site.application.number"
+     */
+    private static EntityID toEntityID(ObjectIdentifierStruct identifier, String text) {
+        if (identifier == null || !identifier.hasNumber()) {
+            throw new IllegalArgumentException("Invalid object identifier '" + text + "', expected site.application.number");
+        }
+        EntityID entityID = new EntityID();
+        entityID.setSite(identifier.getSite());
+        entityID.setApplication(identifier.getApplication());
+        entityID.setEntity(identifier.getNumber());
+        return entityID;
+    }
+
+    private static EventID toEventID(EventIdentifierStruct eventIdentifier) {
+        ObjectIdentifierStruct issuer = eventIdentifier.getIssuingObject();
+        if (issuer == null) {
+            throw new IllegalArgumentException("Invalid issuing object identifier '" + eventIdentifier.getIssuingObjectIdentifier()
+                + "', expected site.application");
+        }
+        EventID eventID = new EventID();
+        eventID.setSite(issuer.getSite());
+        eventID.setApplication(issuer.getApplication());
+        eventID.setEventNumber(eventIdentifier.getEventCount());
+        return eventID;
+    }
+
     public static WeaponFire disWeaponFireToRpr (FirePdu firePdu) {
         WeaponFire weaponFire = new WeaponFire();
 
-        weaponFire.setMunitionObjectIdentifier(firePdu.getMunitionID().getSite()+"."+ firePdu.getMunitionID().getApplication()+"."+firePdu.getMunitionID().getEntity());
+        weaponFire.setMunitionObject(toObjectIdentifier(firePdu.getMunitionID()));
 
-        EventIdentifierStruct eventIDStruct = new EventIdentifierStruct(firePdu.getEventID().getEventNumber(),firePdu.getEventID().getSite()+"."+firePdu.getEventID().getApplication());
+        EventIdentifierStruct eventIDStruct = new EventIdentifierStruct(firePdu.getEventID().getEventNumber(), ObjectIdentifierStruct.of(firePdu.getEventID().getSite(), firePdu.getEventID().getApplication()));
         weaponFire.setEventIdentifier(eventIDStruct);
 
-        weaponFire.setFiringObjectIdentifier(firePdu.getFiringEntityID().getSite()+"."+firePdu.getFiringEntityID().getApplication()+"."+firePdu.getFiringEntityID().getEntity());
+        weaponFire.setFiringObject(toObjectIdentifier(firePdu.getFiringEntityID()));
 
         weaponFire.setFireMissionIndex(Integer.toUnsignedLong(firePdu.getFireMissionIndex()));
 
@@ -160,7 +204,7 @@ public class DisModelConverter {
         weaponFire.setQuantityFired(firePdu.getBurstDescriptor().getQuantity());
         weaponFire.setRateOfFire(firePdu.getBurstDescriptor().getRate());
 
-        weaponFire.setTargetObjectIdentifier(firePdu.getTargetEntityID().getSite()+"."+firePdu.getTargetEntityID().getApplication()+"."+firePdu.getTargetEntityID().getEntity());
+        weaponFire.setTargetObject(toObjectIdentifier(firePdu.getTargetEntityID()));
 
         VelocityVectorStruct initialVelocity = new VelocityVectorStruct(firePdu.getVelocity().getX(), firePdu.getVelocity().getY(), firePdu.getVelocity().getZ());
         weaponFire.setInitialVelocityVector(initialVelocity);
@@ -172,19 +216,9 @@ public class DisModelConverter {
     public static FirePdu rprWeaponFireToDIS(WeaponFire weaponFire) {
         FirePdu firePdu = new FirePdu();
 
-        EntityID munitionID = new EntityID();
-        String[] splitMunitionID = weaponFire.getMunitionObjectIdentifier().split("\\.");
-        munitionID.setSite(Integer.parseInt(splitMunitionID[0]));
-        munitionID.setApplication(Integer.parseInt(splitMunitionID[1]));
-        munitionID.setEntity(Integer.parseInt(splitMunitionID[2]));
-        firePdu.setMunitionID(munitionID);
+        firePdu.setMunitionID(toEntityID(weaponFire.getMunitionObject(), weaponFire.getMunitionObjectIdentifier()));
 
-        EventID eventID = new EventID();
-        String[] splitEventID = weaponFire.getEventIdentifier().getIssuingObjectIdentifier().split("\\.");
-        eventID.setSite(Integer.parseInt(splitEventID[0]));
-        eventID.setApplication(Integer.parseInt(splitEventID[1]));
-        eventID.setEventNumber(weaponFire.getEventIdentifier().getEventCount());
-        firePdu.setEventID(eventID);
+        firePdu.setEventID(toEventID(weaponFire.getEventIdentifier()));
 
 
         firePdu.setFireMissionIndex((int)( weaponFire.getFireMissionIndex()));
@@ -196,12 +230,7 @@ public class DisModelConverter {
         firePdu.setLocationInWorldCoordinates(locationInWorldCoords);
 
 
-        String[] splitFiringEntityID = weaponFire.getFiringObjectIdentifier().split("\\.");
-        EntityID firingEntityID = new EntityID();
-        firingEntityID.setSite(Integer.parseInt(splitFiringEntityID[0]));
-        firingEntityID.setApplication(Integer.parseInt(splitFiringEntityID[1]));
-        firingEntityID.setEntity(Integer.parseInt(splitFiringEntityID[2]));
-        firePdu.setFiringEntityID(firingEntityID);
+        firePdu.setFiringEntityID(toEntityID(weaponFire.getFiringObject(), weaponFire.getFiringObjectIdentifier()));
 
         BurstDescriptor burst = new BurstDescriptor();
         EntityType munitionType = new EntityType();
@@ -225,12 +254,7 @@ public class DisModelConverter {
         initialVelocity.setZ(weaponFire.getInitialVelocityVector().getzVelocity());
         firePdu.setVelocity(initialVelocity);
 
-        String[] splitTargetEntityID = weaponFire.getTargetObjectIdentifier().split("\\.");
-        EntityID targetEntityID = new EntityID();
-        targetEntityID.setSite(Integer.parseInt(splitTargetEntityID[0]));
-        targetEntityID.setApplication(Integer.parseInt(splitTargetEntityID[1]));
-        targetEntityID.setEntity(Integer.parseInt(splitTargetEntityID[2]));
-        firePdu.setTargetEntityID(targetEntityID);
+        firePdu.setTargetEntityID(toEntityID(weaponFire.getTargetObject(), weaponFire.getTargetObjectIdentifier()));
 
         firePdu.setRangeToTarget(weaponFire.getFireControlSolutionRange());
 
@@ -290,21 +314,17 @@ public class DisModelConverter {
 
         munitionDetonation.setDetonationResultCode((byte) detonationPdu.getDetonationResult());
 
-        String siteAndAppId = detonationPdu.getEventID().getSite() + "." + detonationPdu.getEventID().getApplication();
+        ObjectIdentifierStruct siteAndAppId = ObjectIdentifierStruct.of(detonationPdu.getEventID().getSite(), detonationPdu.getEventID().getApplication());
         munitionDetonation.setEventIdentifier(new EventIdentifierStruct(detonationPdu.getEventID().getEventNumber(), siteAndAppId));
 
-        String firingObjID = detonationPdu.getFiringEntityID().getSite() + "." + detonationPdu.getFiringEntityID().getApplication() + "." + detonationPdu.getFiringEntityID().getEntity();
-        munitionDetonation.setFiringObjectIdentifier(firingObjID);
-
-        munitionDetonation.setMunitionObjectIdentifier(detonationPdu.getMunitionID().getSite()+"."+ detonationPdu.getMunitionID().getApplication()+"."+detonationPdu.getMunitionID().getEntity());
+        munitionDetonation.setFiringObject(toObjectIdentifier(detonationPdu.getFiringEntityID()));
 
         VelocityVectorStruct finalVelocity = new VelocityVectorStruct(detonationPdu.getVelocity().getX(), detonationPdu.getVelocity().getY(), detonationPdu.getVelocity().getZ());
         munitionDetonation.setFinalVelocityVector(finalVelocity);
 
         munitionDetonation.setFuseType(detonationPdu.getBurstDescriptor().getFuse());
 
-        String munitionObjID = detonationPdu.getMunitionID().getSite() + "." + detonationPdu.getMunitionID().getApplication() +"."+ detonationPdu.getMunitionID().getEntity();
-        munitionDetonation.setMunitionObjectIdentifier(munitionObjID);
+        munitionDetonation.setMunitionObject(toObjectIdentifier(detonationPdu.getMunitionID()));
 
         EntityType munitionType = detonationPdu.getBurstDescriptor().getMunition();
         munitionDetonation.setMunitionType(new EntityTypeStruct(munitionType.getEntityKind(), munitionType.getDomain(), munitionType.getCountry(), munitionType.getCategory(), munitionType.getSubcategory(), munitionType.getSpec(), munitionType.getExtra()));
@@ -316,8 +336,7 @@ public class DisModelConverter {
         munitionDetonation.setRelativeDetonationLocation(relativePosition);
 
 
-        String targetID =  detonationPdu.getTargetEntityID().getSite() +"."  + detonationPdu.getTargetEntityID().getApplication()+"." + detonationPdu.getTargetEntityID().getEntity();
-        munitionDetonation.setTargetObjectIdentifier(targetID);
+        munitionDetonation.setTargetObject(toObjectIdentifier(detonationPdu.getTargetEntityID()));
 
         munitionDetonation.setWarheadType(detonationPdu.getBurstDescriptor().getWarhead());
 
@@ -327,26 +346,11 @@ public class DisModelConverter {
     public static DetonationPdu rprMunitionDetonationToDIS(MunitionDetonation munitionDetonation) {
         DetonationPdu detonationPdu = new DetonationPdu();
 
-        EntityID munitionID = new EntityID();
-        String[] splitMunitionID = munitionDetonation.getMunitionObjectIdentifier().split("\\.");
-        munitionID.setSite(Integer.parseInt(splitMunitionID[0]));
-        munitionID.setApplication(Integer.parseInt(splitMunitionID[1]));
-        munitionID.setEntity(Integer.parseInt(splitMunitionID[2]));
-        detonationPdu.setMunitionID(munitionID);
+        detonationPdu.setMunitionID(toEntityID(munitionDetonation.getMunitionObject(), munitionDetonation.getMunitionObjectIdentifier()));
 
-        String[] splitFiringEntityID = munitionDetonation.getFiringObjectIdentifier().split("\\.");
-        EntityID firingEntityID = new EntityID();
-        firingEntityID.setSite(Integer.parseInt(splitFiringEntityID[0]));
-        firingEntityID.setApplication(Integer.parseInt(splitFiringEntityID[1]));
-        firingEntityID.setEntity(Integer.parseInt(splitFiringEntityID[2]));
-        detonationPdu.setFiringEntityID(firingEntityID);
+        detonationPdu.setFiringEntityID(toEntityID(munitionDetonation.getFiringObject(), munitionDetonation.getFiringObjectIdentifier()));
 
-        EventID eventID = new EventID();
-        String[] splitEventID = munitionDetonation.getEventIdentifier().getIssuingObjectIdentifier().split("\\.");
-        eventID.setSite(Integer.parseInt(splitEventID[0]));
-        eventID.setApplication(Integer.parseInt(splitEventID[1]));
-        eventID.setEventNumber(munitionDetonation.getEventIdentifier().getEventCount());
-        detonationPdu.setEventID(eventID);
+        detonationPdu.setEventID(toEventID(munitionDetonation.getEventIdentifier()));
 
         Vector3Float finalVelocity = new Vector3Float();
         finalVelocity.setX(munitionDetonation.getFinalVelocityVector().getxVelocity());
@@ -382,12 +386,7 @@ public class DisModelConverter {
         locationInEntity.setZ(munitionDetonation.getRelativeDetonationLocation().getBodyZPosition());
         detonationPdu.setLocationInEntityCoordinates(locationInEntity);
 
-        String[] splitTargetEntityID = munitionDetonation.getTargetObjectIdentifier().split("\\.");
-        EntityID targetEntityID = new EntityID();
-        targetEntityID.setSite(Integer.parseInt(splitTargetEntityID[0]));
-        targetEntityID.setApplication(Integer.parseInt(splitTargetEntityID[1]));
-        targetEntityID.setEntity(Integer.parseInt(splitTargetEntityID[2]));
-        detonationPdu.setTargetEntityID(targetEntityID);
+        detonationPdu.setTargetEntityID(toEntityID(munitionDetonation.getTargetObject(), munitionDetonation.getTargetObjectIdentifier()));
 
         detonationPdu.setDetonationResult(munitionDetonation.getDetonationResultCode());
 
@@ -447,6 +446,95 @@ public class DisModelConverter {
     }
 
 
+    /**
+     * Convert EntityStatePdus in parallel above {@link #BULK_SEQUENTIAL_CUTOFF} pdus
+     * @param entityStatePdus DIS pdus
+     * @return the GrimRPR representations, in the order of the pdus
+     */
+    public static List<BaseEntity> disEntitiesToRpr(List<EntityStatePdu> entityStatePdus) {
+        return convertAll(entityStatePdus, DisModelConverter::disEntityToRpr);
+    }
+
+    /**
+     * Convert FirePdus in parallel above {@link #BULK_SEQUENTIAL_CUTOFF} pdus
+     * @param firePdus DIS pdus
+     * @return the GrimRPR representations, in the order of the pdus
+     */
+    public static List<WeaponFire> disWeaponFiresToRpr(List<FirePdu> firePdus) {
+        return convertAll(firePdus, DisModelConverter::disWeaponFireToRpr);
+    }
+
+    /**
+     * Convert DetonationPdus in parallel above {@link #BULK_SEQUENTIAL_CUTOFF} pdus
+     * @param detonationPdus DIS pdus
+     * @return the GrimRPR representations, in the order of the pdus
+     */
+    public static List<MunitionDetonation> disMunitionDetonationsToRpr(List<DetonationPdu> detonationPdus) {
+        return convertAll(detonationPdus, DisModelConverter::disMunitionDetonationToRpr);
+    }
+
+    /**
+     * Convert each element on the common fork-join pool, each task writing its own
+     * slice of the result so that the order is kept without merging.
+     */
+    private static <S, T> List<T> convertAll(List<S> sources, Function<S, T> converter) {
+        int size = sources.size();
+        if (size <= BULK_SEQUENTIAL_CUTOFF || ForkJoinPool.getCommonPoolParallelism() <= 1) {
+            List<T> results = new ArrayList<>(size);
+            for (S source : sources) {
+                results.add(converter.apply(source));
+            }
+            return results;
+        }
+        // random access so that each task reads its slice directly
+        List<S> indexed = sources instanceof RandomAccess ? sources : new ArrayList<>(sources);
+        Object[] results = new Object[size];
+        // a few slices per worker to balance uneven pdus, not below a quarter of the cutoff
+        int sliceSize = Math.max(BULK_SEQUENTIAL_CUTOFF / 4, size / (ForkJoinPool.getCommonPoolParallelism() * 4));
+        ForkJoinPool.commonPool().invoke(new ConvertTask<>(indexed, results, converter, 0, size, sliceSize));
+        @SuppressWarnings("unchecked")
+        List<T> resultList = (List<T>) Arrays.asList(results);
+        // a mutable list, as on the sequential path
+        return new ArrayList<>(resultList);
+    }
+
+    /**
+     * Convert a range of the sources, splitting it in two while larger than the slice size.
+     * Like any fork-join task, it is never serialized.
+     */
+    @SuppressWarnings("serial")
+    private static final class ConvertTask<S, T> extends RecursiveAction {
+
+        private final List<S> sources;
+        private final Object[] results;
+        private final Function<S, T> converter;
+        private final int from;
+        private final int to;
+        private final int sliceSize;
+
+        private ConvertTask(List<S> sources, Object[] results, Function<S, T> converter, int from, int to, int sliceSize) {
+            this.sources = sources;
+            this.results = results;
+            this.converter = converter;
+            this.from = from;
+            this.to = to;
+            this.sliceSize = sliceSize;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= sliceSize) {
+                for (int i = from; i < to; i++) {
+                    results[i] = converter.apply(sources.get(i));
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new ConvertTask<>(sources, results, converter, from, middle, sliceSize),
+                    new ConvertTask<>(sources, results, converter, middle, to, sliceSize));
+        }
+    }
+
     /**
      * Extract  dis DeadReckoningParameter of a spatial representation.
      * @param spatialRepresentation GrimRpr spatial representation
@@ -470,14 +558,14 @@ public class DisModelConverter {
             // every step are done before the switch statement
             break;
         case DRMR_V_W:
-            AccelerationVectorStruct accelerationVector = ((SpatialRVStruct)spatialRepresentation).getAccelerationVector();
+            AccelerationVectorStruct accelerationVector = ((RotatingSpatialRepresentation)spatialRepresentation).getAccelerationVector();
             Vector3Float accelerationVector3Float = new Vector3Float();
             accelerationVector3Float.setX(accelerationVector.getxAcceleration());
             accelerationVector3Float.setY(accelerationVector.getyAcceleration());
             accelerationVector3Float.setZ(accelerationVector.getzAcceleration());
             pDeadReckoningParameters.setEntityLinearAcceleration(accelerationVector3Float);
             
-            AngularVelocityVectorStruct angularVelocityVector = ((SpatialRVStruct)spatialRepresentation).getAngularVelocityVector();
+            AngularVelocityVectorStruct angularVelocityVector = ((RotatingSpatialRepresentation)spatialRepresentation).getAngularVelocityVector();
             Vector3Float angularVelocityVector3Float = new Vector3Float();
             angularVelocityVector3Float.setX(angularVelocityVector.getxAngularVelocity());
             angularVelocityVector3Float.setY(angularVelocityVector.getyAngularVelocity());
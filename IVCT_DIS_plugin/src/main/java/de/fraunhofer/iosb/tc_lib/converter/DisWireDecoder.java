@@ -0,0 +1,268 @@
+/*******************************************************************************
+ * Copyright (C) Her Majesty the Queen in Right of Canada, 
+ * as represented by the Minister of National Defence, 2018
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package de.fraunhofer.iosb.tc_lib.converter;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ca.drdc.ivct.fom.base.BaseEntity;
+import ca.drdc.ivct.fom.base.ParameterValue;
+import ca.drdc.ivct.fom.base.SpatialRepresentation;
+import ca.drdc.ivct.fom.base.structs.AccelerationVectorStruct;
+import ca.drdc.ivct.fom.base.structs.AngularVelocityVectorStruct;
+import ca.drdc.ivct.fom.base.structs.ArticulatedParameterStruct;
+import ca.drdc.ivct.fom.base.structs.ArticulatedPartsStruct;
+import ca.drdc.ivct.fom.base.structs.AttachedPartsStruct;
+import ca.drdc.ivct.fom.base.structs.EntityIdentifierStruct;
+import ca.drdc.ivct.fom.base.structs.EntityTypeStruct;
+import ca.drdc.ivct.fom.base.structs.EventIdentifierStruct;
+import ca.drdc.ivct.fom.base.structs.ObjectIdentifierStruct;
+import ca.drdc.ivct.fom.base.structs.OrientationStruct;
+import ca.drdc.ivct.fom.base.structs.RelativePositionStruct;
+import ca.drdc.ivct.fom.base.structs.SpatialFPStruct;
+import ca.drdc.ivct.fom.base.structs.SpatialRVStruct;
+import ca.drdc.ivct.fom.base.structs.VelocityVectorStruct;
+import ca.drdc.ivct.fom.base.structs.WorldLocationStruct;
+import ca.drdc.ivct.fom.warfare.MunitionDetonation;
+import ca.drdc.ivct.fom.warfare.WeaponFire;
+import edu.nps.moves.disenum.DeadReckoningAlgorithm;
+import edu.nps.moves.disenum.PduType;
+import edu.nps.moves.siso.EnumNotFoundException;
+
+/**
+ * Decode EntityStatePdu, FirePdu and DetonationPdu from their IEEE 1278.1 format straight to a GrimRPR representation.
+ * <p>
+ * The fields are read at their fixed offsets, without building the open-dis
+ * pdu first. The result is identical to {@link DisModelConverter#disEntityToRpr},
+ * {@link DisModelConverter#disWeaponFireToRpr} and
+ * {@link DisModelConverter#disMunitionDetonationToRpr} applied to the unmarshalled pdu.
+ * <p>
+ * The pdu is read from the position of the buffer, which is left unchanged.
+ */
+public class DisWireDecoder {
+
+    private static Logger logger = LoggerFactory.getLogger(DisWireDecoder.class);
+
+    private static final int PDU_TYPE_OFFSET = 2;
+
+    private static final int ENTITY_STATE_SIZE = 144;
+    private static final int FIRE_SIZE = 96;
+    private static final int DETONATION_SIZE = 104;
+    private static final int ARTICULATION_PARAMETER_SIZE = 16;
+
+    /**
+     * Private construction to prevent instantiation
+     */
+    private DisWireDecoder() {
+    }
+
+    /**
+     * @param buffer a buffer holding an EntityStatePdu at its position
+     * @return the GrimRPR representation of the entity
+     * @throws IllegalArgumentException if the buffer does not hold an EntityStatePdu
+     */
+    public static BaseEntity decodeEntityState(ByteBuffer buffer) {
+        ByteBuffer pdu = bigEndian(buffer);
+        int offset = check(pdu, PduType.ENTITY_STATE, ENTITY_STATE_SIZE);
+
+        BaseEntity receivedEntity = new BaseEntity();
+        receivedEntity.setEntityIdentifier(new EntityIdentifierStruct(unsignedShort(pdu, offset + 12),
+                unsignedShort(pdu, offset + 14), unsignedShort(pdu, offset + 16)));
+        receivedEntity.setEntityType(entityType(pdu, offset + 20));
+        receivedEntity.setSpatial(spatial(pdu, offset));
+        return receivedEntity;
+    }
+
+    private static SpatialRepresentation spatial(ByteBuffer pdu, int offset) {
+        WorldLocationStruct worldLocationStruct = new WorldLocationStruct(pdu.getDouble(offset + 48),
+                pdu.getDouble(offset + 56), pdu.getDouble(offset + 64));
+        OrientationStruct orientationStruct = new OrientationStruct(pdu.getFloat(offset + 72), pdu.getFloat(offset + 76),
+                pdu.getFloat(offset + 80));
+        VelocityVectorStruct velocityVectorStruct = new VelocityVectorStruct(pdu.getFloat(offset + 36),
+                pdu.getFloat(offset + 40), pdu.getFloat(offset + 44));
+        boolean frozen = pdu.getInt(offset + 84) == 1;
+
+        DeadReckoningAlgorithm deadReckoningAlgorithm;
+        try {
+            deadReckoningAlgorithm = DeadReckoningAlgorithm.getEnumerationForValue(unsignedByte(pdu, offset + 88));
+        } catch (EnumNotFoundException e) {
+            deadReckoningAlgorithm = DeadReckoningAlgorithm.OTHER;
+        }
+        ca.drdc.ivct.fom.der.DeadReckoningAlgorithm genericDeadReckoningAlgorithm = ca.drdc.ivct.fom.der.DeadReckoningAlgorithm
+                .valueOf((byte) deadReckoningAlgorithm.value);
+
+        switch (deadReckoningAlgorithm) {
+        case DRMF_P_W:
+            return new SpatialFPStruct(genericDeadReckoningAlgorithm, worldLocationStruct, frozen, orientationStruct,
+                    velocityVectorStruct);
+        case DRMR_V_W:
+            AccelerationVectorStruct accelerationVectorStruct = new AccelerationVectorStruct(pdu.getFloat(offset + 104),
+                    pdu.getFloat(offset + 108), pdu.getFloat(offset + 112));
+            AngularVelocityVectorStruct angularVelocityStruct = new AngularVelocityVectorStruct(pdu.getFloat(offset + 116),
+                    pdu.getFloat(offset + 120), pdu.getFloat(offset + 124));
+            return new SpatialRVStruct(genericDeadReckoningAlgorithm, worldLocationStruct, frozen, orientationStruct,
+                    velocityVectorStruct, accelerationVectorStruct, angularVelocityStruct);
+        default:
+            logger.warn("Not supported yet");
+            return null;
+        }
+    }
+
+    /**
+     * @param buffer a buffer holding a FirePdu at its position
+     * @return the GrimRPR representation of the weapon fire
+     * @throws IllegalArgumentException if the buffer does not hold a FirePdu
+     */
+    public static WeaponFire decodeFire(ByteBuffer buffer) {
+        ByteBuffer pdu = bigEndian(buffer);
+        int offset = check(pdu, PduType.FIRE, FIRE_SIZE);
+
+        WeaponFire weaponFire = new WeaponFire();
+        weaponFire.setFiringObject(objectIdentifier(pdu, offset + 12));
+        weaponFire.setTargetObject(objectIdentifier(pdu, offset + 18));
+        weaponFire.setMunitionObject(objectIdentifier(pdu, offset + 24));
+        weaponFire.setEventIdentifier(eventIdentifier(pdu, offset + 30));
+        weaponFire.setFireMissionIndex(Integer.toUnsignedLong(pdu.getInt(offset + 36)));
+        weaponFire.setFiringLocation(new WorldLocationStruct(pdu.getDouble(offset + 40), pdu.getDouble(offset + 48),
+                pdu.getDouble(offset + 56)));
+
+        weaponFire.setMunitionType(entityType(pdu, offset + 64));
+        weaponFire.setWarheadType(unsignedShort(pdu, offset + 72));
+        weaponFire.setFuseType(unsignedShort(pdu, offset + 74));
+        weaponFire.setQuantityFired(unsignedShort(pdu, offset + 76));
+        weaponFire.setRateOfFire(unsignedShort(pdu, offset + 78));
+
+        weaponFire.setInitialVelocityVector(new VelocityVectorStruct(pdu.getFloat(offset + 80), pdu.getFloat(offset + 84),
+                pdu.getFloat(offset + 88)));
+        weaponFire.setFireControlSolutionRange(pdu.getFloat(offset + 92));
+        return weaponFire;
+    }
+
+    /**
+     * @param buffer a buffer holding a DetonationPdu at its position
+     * @return the GrimRPR representation of the munition detonation
+     * @throws IllegalArgumentException if the buffer does not hold a DetonationPdu, is shorter than its
+     * articulation parameters or one of them is neither articulated nor attached
+     */
+    public static MunitionDetonation decodeDetonation(ByteBuffer buffer) {
+        ByteBuffer pdu = bigEndian(buffer);
+        int offset = check(pdu, PduType.DETONATION, DETONATION_SIZE);
+
+        MunitionDetonation munitionDetonation = new MunitionDetonation();
+        munitionDetonation.setFiringObject(objectIdentifier(pdu, offset + 12));
+        munitionDetonation.setTargetObject(objectIdentifier(pdu, offset + 18));
+        munitionDetonation.setMunitionObject(objectIdentifier(pdu, offset + 24));
+        munitionDetonation.setEventIdentifier(eventIdentifier(pdu, offset + 30));
+        munitionDetonation.setFinalVelocityVector(new VelocityVectorStruct(pdu.getFloat(offset + 36),
+                pdu.getFloat(offset + 40), pdu.getFloat(offset + 44)));
+        munitionDetonation.setDetonationLocation(new WorldLocationStruct(pdu.getDouble(offset + 48),
+                pdu.getDouble(offset + 56), pdu.getDouble(offset + 64)));
+
+        munitionDetonation.setMunitionType(entityType(pdu, offset + 72));
+        munitionDetonation.setWarheadType(unsignedShort(pdu, offset + 80));
+        munitionDetonation.setFuseType(unsignedShort(pdu, offset + 82));
+        munitionDetonation.setQuantityFired(unsignedShort(pdu, offset + 84));
+        munitionDetonation.setRateOfFire(unsignedShort(pdu, offset + 86));
+
+        munitionDetonation.setRelativeDetonationLocation(new RelativePositionStruct(pdu.getFloat(offset + 88),
+                pdu.getFloat(offset + 92), pdu.getFloat(offset + 96)));
+        munitionDetonation.setDetonationResultCode(pdu.get(offset + 100));
+
+        int articulationSize = unsignedByte(pdu, offset + 101);
+        if (pdu.remaining() < DETONATION_SIZE + articulationSize * ARTICULATION_PARAMETER_SIZE) {
+            throw new IllegalArgumentException("Truncated " + PduType.DETONATION + " pdu, size " + pdu.remaining()
+                    + " for " + articulationSize + " articulation parameters");
+        }
+        ArticulatedParameterStruct[] articulatedParams = new ArticulatedParameterStruct[articulationSize];
+        for (int i = 0; i < articulationSize; i++) {
+            articulatedParams[i] = articulatedParameter(pdu, offset + DETONATION_SIZE + i * ARTICULATION_PARAMETER_SIZE);
+        }
+        munitionDetonation.setArticulatedPartData(articulatedParams);
+        return munitionDetonation;
+    }
+
+    private static ArticulatedParameterStruct articulatedParameter(ByteBuffer pdu, int offset) {
+        int designator = unsignedByte(pdu, offset);
+        int changeIndicator = unsignedByte(pdu, offset + 1);
+        int partAttachedTo = unsignedShort(pdu, offset + 2);
+        int parameterType = pdu.getInt(offset + 4);
+        double parameterValue = pdu.getDouble(offset + 8);
+
+        ParameterValue paramValue;
+        switch (designator) {
+        case 0:
+            //Articulated
+            paramValue = new ArticulatedPartsStruct(parameterType - parameterType % 32, parameterType & 0x1f, (float) parameterValue);
+            break;
+        case 1:
+            //Attached, the entity type is packed in the parameter value
+            byte[] bytes = new byte[8];
+            ByteBuffer.wrap(bytes).putDouble(parameterValue);
+            byte[] countryBytes = {bytes[3], bytes[2]};
+            int countryInt = Short.toUnsignedInt(ByteBuffer.wrap(countryBytes).getShort());
+            EntityTypeStruct entityType = new EntityTypeStruct(bytes[0], bytes[1], countryInt, bytes[4], bytes[5], bytes[6], bytes[7]);
+            paramValue = new AttachedPartsStruct(Integer.toUnsignedLong(parameterType), entityType);
+            break;
+        default:
+            throw new IllegalArgumentException("Unsupported articulation parameter type designator " + designator);
+        }
+        paramValue.setArticulatedParameterType(Integer.toUnsignedLong(parameterType));
+        return new ArticulatedParameterStruct((byte) changeIndicator, partAttachedTo, paramValue);
+    }
+
+    private static ByteBuffer bigEndian(ByteBuffer buffer) {
+        return buffer.order() == ByteOrder.BIG_ENDIAN ? buffer : buffer.duplicate().order(ByteOrder.BIG_ENDIAN);
+    }
+
+    /**
+     * @return offset of the pdu in the buffer
+     */
+    private static int check(ByteBuffer pdu, PduType type, int minSize) {
+        int offset = pdu.position();
+        if (pdu.remaining() < minSize || unsignedByte(pdu, offset + PDU_TYPE_OFFSET) != type.value) {
+            throw new IllegalArgumentException("Not a " + type + " pdu, type " + (pdu.remaining() > PDU_TYPE_OFFSET
+                    ? unsignedByte(pdu, offset + PDU_TYPE_OFFSET) : -1) + " size " + pdu.remaining());
+        }
+        return offset;
+    }
+
+    private static EntityTypeStruct entityType(ByteBuffer pdu, int offset) {
+        return new EntityTypeStruct((short) unsignedByte(pdu, offset), (short) unsignedByte(pdu, offset + 1),
+                unsignedShort(pdu, offset + 2), (short) unsignedByte(pdu, offset + 4), (short) unsignedByte(pdu, offset + 5),
+                (short) unsignedByte(pdu, offset + 6), (short) unsignedByte(pdu, offset + 7));
+    }
+
+    private static ObjectIdentifierStruct objectIdentifier(ByteBuffer pdu, int offset) {
+        return ObjectIdentifierStruct.of(unsignedShort(pdu, offset), unsignedShort(pdu, offset + 2), unsignedShort(pdu, offset + 4));
+    }
+
+    private static EventIdentifierStruct eventIdentifier(ByteBuffer pdu, int offset) {
+        return new EventIdentifierStruct(unsignedShort(pdu, offset + 4),
+                ObjectIdentifierStruct.of(unsignedShort(pdu, offset), unsignedShort(pdu, offset + 2)));
+    }
+
+    private static int unsignedByte(ByteBuffer pdu, int offset) {
+        return pdu.get(offset) & 0xFF;
+    }
+
+    private static int unsignedShort(ByteBuffer pdu, int offset) {
+        return pdu.getShort(offset) & 0xFFFF;
+    }
+}
@@ -0,0 +1,354 @@
+/*******************************************************************************
+ * Copyright (C) Her Majesty the Queen in Right of Canada, 
+ * as represented by the Minister of National Defence, 2018
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package de.fraunhofer.iosb.tc_lib.converter;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import ca.drdc.ivct.fom.base.BaseEntity;
+import ca.drdc.ivct.fom.base.ParameterValue;
+import ca.drdc.ivct.fom.base.RotatingSpatialRepresentation;
+import ca.drdc.ivct.fom.base.SpatialRepresentation;
+import ca.drdc.ivct.fom.base.structs.AccelerationVectorStruct;
+import ca.drdc.ivct.fom.base.structs.AngularVelocityVectorStruct;
+import ca.drdc.ivct.fom.base.structs.ArticulatedParameterStruct;
+import ca.drdc.ivct.fom.base.structs.ArticulatedPartsStruct;
+import ca.drdc.ivct.fom.base.structs.AttachedPartsStruct;
+import ca.drdc.ivct.fom.base.structs.EntityIdentifierStruct;
+import ca.drdc.ivct.fom.base.structs.EntityTypeStruct;
+import ca.drdc.ivct.fom.base.structs.EventIdentifierStruct;
+import ca.drdc.ivct.fom.base.structs.ObjectIdentifierStruct;
+import ca.drdc.ivct.fom.base.structs.VelocityVectorStruct;
+import ca.drdc.ivct.fom.base.structs.WorldLocationStruct;
+import ca.drdc.ivct.fom.warfare.MunitionDetonation;
+import ca.drdc.ivct.fom.warfare.WeaponFire;
+import edu.nps.moves.disenum.DeadReckoningAlgorithm;
+import edu.nps.moves.disenum.PduType;
+import edu.nps.moves.siso.EnumNotFoundException;
+
+/**
+ * Encode a GrimRPR BaseEntity, WeaponFire or MunitionDetonation straight to the IEEE 1278.1 format.
+ * <p>
+ * The fields are written at their fixed offsets in a caller supplied buffer,
+ * without building the open-dis pdu. The bytes are identical to the marshalling of
+ * {@link DisModelConverter#rprEntityToDis}, {@link DisModelConverter#rprWeaponFireToDIS}
+ * and {@link DisModelConverter#rprMunitionDetonationToDIS}, with the given timestamp.
+ * <p>
+ * Each encode method writes the pdu at the position of the buffer and moves the
+ * position after it. On error the position is left unchanged.
+ */
+public class DisWireEncoder {
+
+    /**
+     * Header fields written by open-dis
+     */
+    private static final int PROTOCOL_VERSION = 6;
+    private static final int ENTITY_INFORMATION_FAMILY = 1;
+    private static final int WARFARE_FAMILY = 2;
+
+    private static final int PDU_LENGTH_OFFSET = 8;
+
+    /**
+     * Size of an EntityStatePdu without articulation parameters
+     */
+    public static final int ENTITY_STATE_SIZE = 144;
+
+    /**
+     * Size of a FirePdu
+     */
+    public static final int FIRE_SIZE = 96;
+
+    /**
+     * Size of a DetonationPdu without articulation parameters
+     */
+    public static final int DETONATION_SIZE = 104;
+
+    private static final int ARTICULATION_PARAMETER_SIZE = 16;
+
+    /**
+     * Articulation parameters a pdu can count, on one byte
+     */
+    private static final int MAX_ARTICULATION_PARAMETERS = 255;
+
+    private static final int VELOCITY_OFFSET = 36;
+    private static final int LOCATION_OFFSET = 48;
+    private static final int ORIENTATION_OFFSET = 72;
+    private static final int APPEARANCE_OFFSET = 84;
+    private static final int DEAD_RECKONING_ALGORITHM_OFFSET = 88;
+    private static final int LINEAR_ACCELERATION_OFFSET = 104;
+    private static final int ANGULAR_VELOCITY_OFFSET = 116;
+
+    /**
+     * Private construction to prevent instantiation
+     */
+    private DisWireEncoder() {
+    }
+
+    /**
+     * @param baseEntity the entity to encode
+     * @param timestamp the pdu timestamp, 0 as written by open-dis marshal()
+     * @param buffer the buffer receiving the EntityStatePdu at its position
+     * @return size of the pdu in bytes
+     * @throws BufferOverflowException if the pdu does not fit in the remaining bytes
+     */
+    public static int encodeEntityState(BaseEntity baseEntity, long timestamp, ByteBuffer buffer) {
+        ByteBuffer pdu = bigEndian(buffer);
+        int offset = start(pdu, ENTITY_STATE_SIZE);
+
+        EntityIdentifierStruct entityIdentifier = baseEntity.getEntityIdentifier();
+        pdu.putShort(offset + 12, (short) entityIdentifier.getSite());
+        pdu.putShort(offset + 14, (short) entityIdentifier.getApplication());
+        pdu.putShort(offset + 16, (short) entityIdentifier.getEntity());
+        putEntityType(pdu, offset + 20, baseEntity.getEntityType());
+        writeSpatial(pdu, offset, baseEntity.getSpatialRepresentation());
+
+        putHeader(pdu, offset, PduType.ENTITY_STATE, ENTITY_INFORMATION_FAMILY, timestamp, ENTITY_STATE_SIZE);
+        buffer.position(offset + ENTITY_STATE_SIZE);
+        return ENTITY_STATE_SIZE;
+    }
+
+    /**
+     * Write the spatial fields of an EntityStatePdu, as {@link DisModelConverter#rprEntityToDis} sets them.
+     * Only the RVW algorithm carries acceleration and angular velocity, they are zero otherwise.
+     * @param pdu a big endian buffer holding an EntityStatePdu
+     * @param offset offset of the pdu in the buffer
+     * @param spatial the spatial representation of the entity
+     */
+    public static void writeSpatial(ByteBuffer pdu, int offset, SpatialRepresentation spatial) {
+        putVelocity(pdu, offset + VELOCITY_OFFSET, spatial.getVelocityVector());
+        putLocation(pdu, offset + LOCATION_OFFSET, spatial.getWorldLocation());
+
+        pdu.putFloat(offset + ORIENTATION_OFFSET, spatial.getOrientation().getPsi());
+        pdu.putFloat(offset + ORIENTATION_OFFSET + 4, spatial.getOrientation().getTheta());
+        pdu.putFloat(offset + ORIENTATION_OFFSET + 8, spatial.getOrientation().getPhi());
+
+        pdu.putInt(offset + APPEARANCE_OFFSET, spatial.isFrozen() ? 1 : 0);
+
+        DeadReckoningAlgorithm algorithm;
+        try {
+            algorithm = DeadReckoningAlgorithm.getEnumerationForValue(spatial.getDeadReckoningAlgorithm().value());
+        } catch (EnumNotFoundException e) {
+            algorithm = DeadReckoningAlgorithm.OTHER;
+        }
+        pdu.put(offset + DEAD_RECKONING_ALGORITHM_OFFSET, (byte) algorithm.value);
+
+        if (algorithm == DeadReckoningAlgorithm.DRMR_V_W) {
+            AccelerationVectorStruct acceleration = ((RotatingSpatialRepresentation) spatial).getAccelerationVector();
+            AngularVelocityVectorStruct angularVelocity = ((RotatingSpatialRepresentation) spatial).getAngularVelocityVector();
+            putVector(pdu, offset + LINEAR_ACCELERATION_OFFSET, acceleration.getxAcceleration(),
+                    acceleration.getyAcceleration(), acceleration.getzAcceleration());
+            putVector(pdu, offset + ANGULAR_VELOCITY_OFFSET, angularVelocity.getxAngularVelocity(),
+                    angularVelocity.getyAngularVelocity(), angularVelocity.getzAngularVelocity());
+        } else {
+            putVector(pdu, offset + LINEAR_ACCELERATION_OFFSET, 0, 0, 0);
+            putVector(pdu, offset + ANGULAR_VELOCITY_OFFSET, 0, 0, 0);
+        }
+    }
+
+    /**
+     * @param weaponFire the weapon fire to encode
+     * @param timestamp the pdu timestamp, 0 as written by open-dis marshal()
+     * @param buffer the buffer receiving the FirePdu at its position
+     * @return size of the pdu in bytes
+     * @throws BufferOverflowException if the pdu does not fit in the remaining bytes
+     * @throws IllegalArgumentException if an object or event identifier is not numeric
+     */
+    public static int encodeFire(WeaponFire weaponFire, long timestamp, ByteBuffer buffer) {
+        ByteBuffer pdu = bigEndian(buffer);
+        int offset = start(pdu, FIRE_SIZE);
+        putObjectIdentifier(pdu, offset + 12, weaponFire.getFiringObject(), weaponFire.getFiringObjectIdentifier());
+        putObjectIdentifier(pdu, offset + 18, weaponFire.getTargetObject(), weaponFire.getTargetObjectIdentifier());
+        putObjectIdentifier(pdu, offset + 24, weaponFire.getMunitionObject(), weaponFire.getMunitionObjectIdentifier());
+        putEventIdentifier(pdu, offset + 30, weaponFire.getEventIdentifier());
+        pdu.putInt(offset + 36, (int) weaponFire.getFireMissionIndex());
+        putLocation(pdu, offset + 40, weaponFire.getFiringLocation());
+
+        putEntityType(pdu, offset + 64, weaponFire.getMunitionType());
+        pdu.putShort(offset + 72, (short) weaponFire.getWarheadType());
+        pdu.putShort(offset + 74, (short) weaponFire.getFuseType());
+        pdu.putShort(offset + 76, (short) weaponFire.getQuantityFired());
+        pdu.putShort(offset + 78, (short) weaponFire.getRateOfFire());
+
+        putVelocity(pdu, offset + 80, weaponFire.getInitialVelocityVector());
+        pdu.putFloat(offset + 92, weaponFire.getFireControlSolutionRange());
+
+        putHeader(pdu, offset, PduType.FIRE, WARFARE_FAMILY, timestamp, FIRE_SIZE);
+        buffer.position(offset + FIRE_SIZE);
+        return FIRE_SIZE;
+    }
+
+    /**
+     * @param munitionDetonation the munition detonation to encode
+     * @param timestamp the pdu timestamp, 0 as written by open-dis marshal()
+     * @param buffer the buffer receiving the DetonationPdu at its position
+     * @return size of the pdu in bytes
+     * @throws BufferOverflowException if the pdu does not fit in the remaining bytes
+     * @throws IllegalArgumentException if an object or event identifier is not numeric, or there are more
+     * than 255 articulation parameters
+     */
+    public static int encodeDetonation(MunitionDetonation munitionDetonation, long timestamp, ByteBuffer buffer) {
+        ByteBuffer pdu = bigEndian(buffer);
+        ArticulatedParameterStruct[] articulatedParams = munitionDetonation.getArticulatedPartData();
+        if (articulatedParams.length > MAX_ARTICULATION_PARAMETERS) {
+            throw new IllegalArgumentException("Too many articulation parameters for a " + PduType.DETONATION
+                    + " pdu : " + articulatedParams.length + ", at most " + MAX_ARTICULATION_PARAMETERS);
+        }
+        int size = DETONATION_SIZE + articulatedParams.length * ARTICULATION_PARAMETER_SIZE;
+        int offset = start(pdu, size);
+        putObjectIdentifier(pdu, offset + 12, munitionDetonation.getFiringObject(),
+                munitionDetonation.getFiringObjectIdentifier());
+        putObjectIdentifier(pdu, offset + 18, munitionDetonation.getTargetObject(),
+                munitionDetonation.getTargetObjectIdentifier());
+        putObjectIdentifier(pdu, offset + 24, munitionDetonation.getMunitionObject(),
+                munitionDetonation.getMunitionObjectIdentifier());
+        putEventIdentifier(pdu, offset + 30, munitionDetonation.getEventIdentifier());
+        putVelocity(pdu, offset + 36, munitionDetonation.getFinalVelocityVector());
+        putLocation(pdu, offset + 48, munitionDetonation.getDetonationLocation());
+
+        putEntityType(pdu, offset + 72, munitionDetonation.getMunitionType());
+        pdu.putShort(offset + 80, (short) munitionDetonation.getWarheadType());
+        pdu.putShort(offset + 82, (short) munitionDetonation.getFuseType());
+        pdu.putShort(offset + 84, (short) munitionDetonation.getQuantityFired());
+        pdu.putShort(offset + 86, (short) munitionDetonation.getRateOfFire());
+
+        pdu.putFloat(offset + 88, munitionDetonation.getRelativeDetonationLocation().getBodyXPosition());
+        pdu.putFloat(offset + 92, munitionDetonation.getRelativeDetonationLocation().getBodyYPosition());
+        pdu.putFloat(offset + 96, munitionDetonation.getRelativeDetonationLocation().getBodyZPosition());
+        pdu.put(offset + 100, munitionDetonation.getDetonationResultCode());
+        pdu.put(offset + 101, (byte) articulatedParams.length);
+
+        for (int i = 0; i < articulatedParams.length; i++) {
+            putArticulatedParameter(pdu, offset + DETONATION_SIZE + i * ARTICULATION_PARAMETER_SIZE, articulatedParams[i]);
+        }
+
+        putHeader(pdu, offset, PduType.DETONATION, WARFARE_FAMILY, timestamp, size);
+        buffer.position(offset + size);
+        return size;
+    }
+
+    private static void putArticulatedParameter(ByteBuffer pdu, int offset, ArticulatedParameterStruct part) {
+        pdu.put(offset + 1, part.getArticulatedParameterChange());
+        pdu.putShort(offset + 2, (short) part.getPartAttachedTo());
+
+        ParameterValue parameterValue = part.getParameterValue();
+        // same class test as the converter, any other value is left to zero
+        if (parameterValue.getClass().isAssignableFrom(ArticulatedPartsStruct.class)) {
+            ArticulatedPartsStruct articulatedPart = (ArticulatedPartsStruct) parameterValue;
+            pdu.put(offset, (byte) 0);
+            pdu.putInt(offset + 4, (int) (articulatedPart.getTypeMetric() + articulatedPart.getArticulatedPartsType()));
+            pdu.putDouble(offset + 8, articulatedPart.getValue());
+        } else if (parameterValue.getClass().isAssignableFrom(AttachedPartsStruct.class)) {
+            EntityTypeStruct entityType = ((AttachedPartsStruct) parameterValue).getStoreType();
+            pdu.put(offset, (byte) 1);
+            pdu.putInt(offset + 4, (int) parameterValue.getArticulatedParameterType());
+            // the entity type packed in the parameter value, country code low byte first
+            pdu.put(offset + 8, (byte) entityType.getEntityKind());
+            pdu.put(offset + 9, (byte) entityType.getDomain());
+            pdu.put(offset + 10, (byte) entityType.getCountryCode());
+            pdu.put(offset + 11, (byte) (entityType.getCountryCode() >>> 8));
+            pdu.put(offset + 12, (byte) entityType.getCategory());
+            pdu.put(offset + 13, (byte) entityType.getSubcategory());
+            pdu.put(offset + 14, (byte) entityType.getSpecific());
+            pdu.put(offset + 15, (byte) entityType.getExtra());
+        }
+    }
+
+    private static ByteBuffer bigEndian(ByteBuffer buffer) {
+        return buffer.order() == ByteOrder.BIG_ENDIAN ? buffer : buffer.duplicate().order(ByteOrder.BIG_ENDIAN);
+    }
+
+    /**
+     * Check the pdu fits and zero its bytes, so that the fields not set read as open-dis defaults
+     * @return offset of the pdu in the buffer
+     */
+    private static int start(ByteBuffer pdu, int size) {
+        if (pdu.remaining() < size) {
+            throw new BufferOverflowException();
+        }
+        int offset = pdu.position();
+        clear(pdu, offset, size);
+        return offset;
+    }
+
+    private static void clear(ByteBuffer pdu, int offset, int size) {
+        int i = 0;
+        for (; i + 8 <= size; i += 8) {
+            pdu.putLong(offset + i, 0L);
+        }
+        for (; i < size; i++) {
+            pdu.put(offset + i, (byte) 0);
+        }
+    }
+
+    private static void putHeader(ByteBuffer pdu, int offset, PduType type, int family, long timestamp, int size) {
+        pdu.put(offset, (byte) PROTOCOL_VERSION);
+        pdu.put(offset + 2, (byte) type.value);
+        pdu.put(offset + 3, (byte) family);
+        pdu.putInt(offset + 4, (int) timestamp);
+        pdu.putShort(offset + PDU_LENGTH_OFFSET, (short) size);
+    }
+
+    private static void putEntityType(ByteBuffer pdu, int offset, EntityTypeStruct entityType) {
+        pdu.put(offset, (byte) entityType.getEntityKind());
+        pdu.put(offset + 1, (byte) entityType.getDomain());
+        pdu.putShort(offset + 2, (short) entityType.getCountryCode());
+        pdu.put(offset + 4, (byte) entityType.getCategory());
+        pdu.put(offset + 5, (byte) entityType.getSubcategory());
+        pdu.put(offset + 6, (byte) entityType.getSpecific());
+        pdu.put(offset + 7, (byte) entityType.getExtra());
+    }
+
+    /**
+     * @throws IllegalArgumentException if the identifier is not "site.application.number"
+     */
+    private static void putObjectIdentifier(ByteBuffer pdu, int offset, ObjectIdentifierStruct identifier, String text) {
+        if (identifier == null || !identifier.hasNumber()) {
+            throw new IllegalArgumentException("Invalid object identifier '" + text + "', expected site.application.number");
+        }
+        pdu.putShort(offset, (short) identifier.getSite());
+        pdu.putShort(offset + 2, (short) identifier.getApplication());
+        pdu.putShort(offset + 4, (short) identifier.getNumber());
+    }
+
+    private static void putEventIdentifier(ByteBuffer pdu, int offset, EventIdentifierStruct eventIdentifier) {
+        ObjectIdentifierStruct issuer = eventIdentifier.getIssuingObject();
+        if (issuer == null) {
+            throw new IllegalArgumentException("Invalid issuing object identifier '" + eventIdentifier.getIssuingObjectIdentifier()
+                + "', expected site.application");
+        }
+        pdu.putShort(offset, (short) issuer.getSite());
+        pdu.putShort(offset + 2, (short) issuer.getApplication());
+        pdu.putShort(offset + 4, (short) eventIdentifier.getEventCount());
+    }
+
+    private static void putLocation(ByteBuffer pdu, int offset, WorldLocationStruct location) {
+        pdu.putDouble(offset, location.getxPosition());
+        pdu.putDouble(offset + 8, location.getyPosition());
+        pdu.putDouble(offset + 16, location.getzPosition());
+    }
+
+    private static void putVelocity(ByteBuffer pdu, int offset, VelocityVectorStruct velocity) {
+        putVector(pdu, offset, velocity.getxVelocity(), velocity.getyVelocity(), velocity.getzVelocity());
+    }
+
+    private static void putVector(ByteBuffer pdu, int offset, float x, float y, float z) {
+        pdu.putFloat(offset, x);
+        pdu.putFloat(offset + 4, y);
+        pdu.putFloat(offset + 8, z);
+    }
+}
@@ -0,0 +1,208 @@
+/*******************************************************************************
+ * Copyright (C) Her Majesty the Queen in Right of Canada, 
+ * as represented by the Minister of National Defence, 2018
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package de.fraunhofer.iosb.tc_lib.converter;
+
+import java.nio.ByteBuffer;
+
+import ca.drdc.ivct.fom.base.BaseEntity;
+import ca.drdc.ivct.fom.base.SpatialRepresentation;
+import ca.drdc.ivct.fom.base.structs.EntityIdentifierStruct;
+import ca.drdc.ivct.fom.base.structs.EntityTypeStruct;
+import edu.nps.moves.disenum.PduType;
+
+/**
+ * A read-only BaseEntity reading its fields from the bytes of an EntityStatePdu.
+ * <p>
+ * Nothing is decoded when the view is pointed at a pdu, each getter reads its
+ * field at its fixed offset. The primitive getters do not allocate, so a single
+ * view can be re-pointed with {@link #wrap(byte[], int)} across every pdu of a
+ * scan. The struct getters build their struct on each call.
+ * <p>
+ * The view holds no copy of the bytes, which must not change while it is in use.
+ * A view is compared by identity, call {@link #toBaseEntity()} to keep or compare
+ * the entity it currently shows. A view is not thread-safe.
+ */
+public class EntityStateView extends BaseEntity {
+
+    private static final int PDU_TYPE_OFFSET = 2;
+    private static final int ENTITY_ID_OFFSET = 12;
+    private static final int ENTITY_TYPE_OFFSET = 20;
+
+    private final SpatialView spatial = new SpatialView();
+
+    private byte[] data;
+    private int offset;
+
+    /**
+     * Point the view at an EntityStatePdu
+     * @param pduData the pdu in IEEE 1278.1 format
+     * @return this view
+     * @throws IllegalArgumentException if the bytes do not hold an EntityStatePdu
+     */
+    public EntityStateView wrap(byte[] pduData) {
+        return wrap(pduData, 0);
+    }
+
+    /**
+     * Point the view at an EntityStatePdu
+     * @param pduData bytes holding a pdu in IEEE 1278.1 format
+     * @param pduOffset offset of the pdu in the bytes
+     * @return this view
+     * @throws IllegalArgumentException if the bytes do not hold an EntityStatePdu at this offset
+     */
+    public EntityStateView wrap(byte[] pduData, int pduOffset) {
+        if (pduOffset < 0 || pduData.length - pduOffset < DisWireEncoder.ENTITY_STATE_SIZE
+                || (pduData[pduOffset + PDU_TYPE_OFFSET] & 0xFF) != PduType.ENTITY_STATE.value) {
+            throw new IllegalArgumentException("Not an EntityStatePdu at offset " + pduOffset + ", size " + pduData.length);
+        }
+        this.data = pduData;
+        this.offset = pduOffset;
+        spatial.wrap(pduData, pduOffset);
+        return this;
+    }
+
+    public int getSite() {
+        return readUnsignedShort(data, offset + ENTITY_ID_OFFSET);
+    }
+
+    public int getApplication() {
+        return readUnsignedShort(data, offset + ENTITY_ID_OFFSET + 2);
+    }
+
+    public int getEntity() {
+        return readUnsignedShort(data, offset + ENTITY_ID_OFFSET + 4);
+    }
+
+    public short getEntityKind() {
+        return (short) (data[offset + ENTITY_TYPE_OFFSET] & 0xFF);
+    }
+
+    public short getDomain() {
+        return (short) (data[offset + ENTITY_TYPE_OFFSET + 1] & 0xFF);
+    }
+
+    public int getCountryCode() {
+        return readUnsignedShort(data, offset + ENTITY_TYPE_OFFSET + 2);
+    }
+
+    public short getCategory() {
+        return (short) (data[offset + ENTITY_TYPE_OFFSET + 4] & 0xFF);
+    }
+
+    public short getSubcategory() {
+        return (short) (data[offset + ENTITY_TYPE_OFFSET + 5] & 0xFF);
+    }
+
+    public short getSpecific() {
+        return (short) (data[offset + ENTITY_TYPE_OFFSET + 6] & 0xFF);
+    }
+
+    public short getExtra() {
+        return (short) (data[offset + ENTITY_TYPE_OFFSET + 7] & 0xFF);
+    }
+
+    /**
+     * @return a new identifier struct of the current pdu
+     */
+    @Override
+    public EntityIdentifierStruct getEntityIdentifier() {
+        return new EntityIdentifierStruct(getSite(), getApplication(), getEntity());
+    }
+
+    /**
+     * @return a new entity type struct of the current pdu
+     */
+    @Override
+    public EntityTypeStruct getEntityType() {
+        return new EntityTypeStruct(getEntityKind(), getDomain(), getCountryCode(), getCategory(), getSubcategory(),
+                getSpecific(), getExtra());
+    }
+
+    /**
+     * @return the spatial view of the current pdu, re-pointed with this view, null if the
+     * dead reckoning algorithm is neither FPW nor RVW as with {@link DisModelConverter#disEntityToRpr}
+     */
+    @Override
+    public SpatialRepresentation getSpatialRepresentation() {
+        return spatial.isSupported() ? spatial : null;
+    }
+
+    /**
+     * @return the spatial view of the current pdu whatever its dead reckoning algorithm
+     */
+    public SpatialView getSpatialView() {
+        return spatial;
+    }
+
+    /**
+     * @return a BaseEntity decoded from the current pdu, independent of this view
+     */
+    public BaseEntity toBaseEntity() {
+        return DisWireDecoder.decodeEntityState(ByteBuffer.wrap(data, offset, data.length - offset));
+    }
+
+    @Override
+    public void setEntityType(EntityTypeStruct entityType) {
+        throw new UnsupportedOperationException("EntityStateView is read-only");
+    }
+
+    @Override
+    public void setEntityIdentifier(EntityIdentifierStruct entityIdentifier) {
+        throw new UnsupportedOperationException("EntityStateView is read-only");
+    }
+
+    @Override
+    public void setSpatial(SpatialRepresentation spatial) {
+        throw new UnsupportedOperationException("EntityStateView is read-only");
+    }
+
+    @Override
+    public void setSpatialRepresentation(SpatialRepresentation spatialRepresentation) {
+        throw new UnsupportedOperationException("EntityStateView is read-only");
+    }
+
+    @Override
+    public int hashCode() {
+        return System.identityHashCode(this);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return this == obj;
+    }
+
+    @Override
+    public String toString() {
+        return "Entity [" + getEntityIdentifier() + " " + getEntityType() + " " + getSpatialRepresentation() + "]";
+    }
+
+    static int readUnsignedShort(byte[] data, int offset) {
+        return ((data[offset] & 0xFF) << 8) | (data[offset + 1] & 0xFF);
+    }
+
+    static int readInt(byte[] data, int offset) {
+        return (readUnsignedShort(data, offset) << 16) | readUnsignedShort(data, offset + 2);
+    }
+
+    static float readFloat(byte[] data, int offset) {
+        return Float.intBitsToFloat(readInt(data, offset));
+    }
+
+    static double readDouble(byte[] data, int offset) {
+        return Double.longBitsToDouble(((long) readInt(data, offset) << 32) | (readInt(data, offset + 4) & 0xFFFFFFFFL));
+    }
+}
@@ -0,0 +1,182 @@
+/*******************************************************************************
+ * Copyright (C) Her Majesty the Queen in Right of Canada, 
+ * as represented by the Minister of National Defence, 2018
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package de.fraunhofer.iosb.tc_lib.converter;
+
+import static de.fraunhofer.iosb.tc_lib.converter.EntityStateView.readDouble;
+import static de.fraunhofer.iosb.tc_lib.converter.EntityStateView.readFloat;
+import static de.fraunhofer.iosb.tc_lib.converter.EntityStateView.readInt;
+
+import ca.drdc.ivct.fom.base.RotatingSpatialRepresentation;
+import ca.drdc.ivct.fom.base.structs.AccelerationVectorStruct;
+import ca.drdc.ivct.fom.base.structs.AngularVelocityVectorStruct;
+import ca.drdc.ivct.fom.base.structs.OrientationStruct;
+import ca.drdc.ivct.fom.base.structs.VelocityVectorStruct;
+import ca.drdc.ivct.fom.base.structs.WorldLocationStruct;
+import ca.drdc.ivct.fom.der.DeadReckoningAlgorithm;
+
+/**
+ * A read-only SpatialRepresentation reading its fields from the bytes of an EntityStatePdu.
+ * <p>
+ * It is owned and re-pointed by an {@link EntityStateView}. The primitive getters
+ * do not allocate, the struct getters build their struct on each call. The
+ * acceleration and angular velocity are those of the RVW algorithm, as
+ * {@link ca.drdc.ivct.fom.base.structs.SpatialRVStruct} holds them.
+ */
+public class SpatialView implements RotatingSpatialRepresentation {
+
+    private static final int VELOCITY_OFFSET = 36;
+    private static final int LOCATION_OFFSET = 48;
+    private static final int ORIENTATION_OFFSET = 72;
+    private static final int APPEARANCE_OFFSET = 84;
+    private static final int DEAD_RECKONING_ALGORITHM_OFFSET = 88;
+    private static final int LINEAR_ACCELERATION_OFFSET = 104;
+    private static final int ANGULAR_VELOCITY_OFFSET = 116;
+
+    /**
+     * Cached once, values() copies the array on each call
+     */
+    private static final DeadReckoningAlgorithm[] ALGORITHMS = DeadReckoningAlgorithm.values();
+
+    private byte[] data;
+    private int offset;
+
+    SpatialView() {
+    }
+
+    void wrap(byte[] pduData, int pduOffset) {
+        this.data = pduData;
+        this.offset = pduOffset;
+    }
+
+    /**
+     * @return true for the FPW and RVW algorithms, the ones {@link DisModelConverter#disEntityToRpr} converts
+     */
+    public boolean isSupported() {
+        DeadReckoningAlgorithm algorithm = getDeadReckoningAlgorithm();
+        return algorithm == DeadReckoningAlgorithm.DRM_FPW || algorithm == DeadReckoningAlgorithm.DRM_RVW;
+    }
+
+    /**
+     * @return the algorithm of the pdu, OTHER if it is not a DIS algorithm
+     */
+    @Override
+    public DeadReckoningAlgorithm getDeadReckoningAlgorithm() {
+        int value = data[offset + DEAD_RECKONING_ALGORITHM_OFFSET] & 0xFF;
+        for (DeadReckoningAlgorithm algorithm : ALGORITHMS) {
+            if (algorithm.value() == value) {
+                return algorithm;
+            }
+        }
+        return DeadReckoningAlgorithm.OTHER;
+    }
+
+    @Override
+    public boolean isFrozen() {
+        return readInt(data, offset + APPEARANCE_OFFSET) == 1;
+    }
+
+    public double getxPosition() {
+        return readDouble(data, offset + LOCATION_OFFSET);
+    }
+
+    public double getyPosition() {
+        return readDouble(data, offset + LOCATION_OFFSET + 8);
+    }
+
+    public double getzPosition() {
+        return readDouble(data, offset + LOCATION_OFFSET + 16);
+    }
+
+    public float getPsi() {
+        return readFloat(data, offset + ORIENTATION_OFFSET);
+    }
+
+    public float getTheta() {
+        return readFloat(data, offset + ORIENTATION_OFFSET + 4);
+    }
+
+    public float getPhi() {
+        return readFloat(data, offset + ORIENTATION_OFFSET + 8);
+    }
+
+    public float getxVelocity() {
+        return readFloat(data, offset + VELOCITY_OFFSET);
+    }
+
+    public float getyVelocity() {
+        return readFloat(data, offset + VELOCITY_OFFSET + 4);
+    }
+
+    public float getzVelocity() {
+        return readFloat(data, offset + VELOCITY_OFFSET + 8);
+    }
+
+    public float getxAcceleration() {
+        return readFloat(data, offset + LINEAR_ACCELERATION_OFFSET);
+    }
+
+    public float getyAcceleration() {
+        return readFloat(data, offset + LINEAR_ACCELERATION_OFFSET + 4);
+    }
+
+    public float getzAcceleration() {
+        return readFloat(data, offset + LINEAR_ACCELERATION_OFFSET + 8);
+    }
+
+    public float getxAngularVelocity() {
+        return readFloat(data, offset + ANGULAR_VELOCITY_OFFSET);
+    }
+
+    public float getyAngularVelocity() {
+        return readFloat(data, offset + ANGULAR_VELOCITY_OFFSET + 4);
+    }
+
+    public float getzAngularVelocity() {
+        return readFloat(data, offset + ANGULAR_VELOCITY_OFFSET + 8);
+    }
+
+    @Override
+    public WorldLocationStruct getWorldLocation() {
+        return new WorldLocationStruct(getxPosition(), getyPosition(), getzPosition());
+    }
+
+    @Override
+    public OrientationStruct getOrientation() {
+        return new OrientationStruct(getPsi(), getTheta(), getPhi());
+    }
+
+    @Override
+    public VelocityVectorStruct getVelocityVector() {
+        return new VelocityVectorStruct(getxVelocity(), getyVelocity(), getzVelocity());
+    }
+
+    @Override
+    public AccelerationVectorStruct getAccelerationVector() {
+        return new AccelerationVectorStruct(getxAcceleration(), getyAcceleration(), getzAcceleration());
+    }
+
+    @Override
+    public AngularVelocityVectorStruct getAngularVelocityVector() {
+        return new AngularVelocityVectorStruct(getxAngularVelocity(), getyAngularVelocity(), getzAngularVelocity());
+    }
+
+    @Override
+    public String toString() {
+        return "SpatialView [deadReckoningAlgo=" + getDeadReckoningAlgorithm() + ", " + getWorldLocation() + ", frozen="
+            + isFrozen() + ", " + getOrientation() + ", " + getVelocityVector() + "]";
+    }
+}
@@ -0,0 +1,79 @@
+/*******************************************************************************
+ * Copyright (C) Her Majesty the Queen in Right of Canada, 
+ * as represented by the Minister of National Defence, 2018
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package de.fraunhofer.iosb.tc_lib.dis;
+
+/**
+ * How the {@link DisSender} packs several pdus in one datagram, as IEEE 1278.1 permits.
+ * <p>
+ * A bundle is sent when the next pdu would not fit in the maximum size, when
+ * it holds the maximum number of pdus, or when its first pdu waited for the
+ * maximum latency. A bound of zero or less means unlimited, except for the
+ * size which is always bounded.
+ */
+public class BundlingPolicy {
+
+    /**
+     * Payload of a UDP datagram fitting in an Ethernet frame
+     */
+    public static final int DEFAULT_MAX_BYTES = 1400;
+
+    public static final long DEFAULT_MAX_LATENCY_MILLIS = 10;
+
+    /**
+     * Send each pdu in its own datagram, the behavior when no policy is configured
+     */
+    public static final BundlingPolicy DISABLED = new BundlingPolicy(0, 0, 0);
+
+    private final int maxBytes;
+    private final int maxPdus;
+    private final long maxLatencyMillis;
+
+    /**
+     * @param maxBytes maximum size of a datagram in bytes, 0 or less to disable bundling
+     * @param maxPdus maximum number of pdus in a datagram
+     * @param maxLatencyMillis maximum time a pdu waits in a bundle in milliseconds
+     */
+    public BundlingPolicy(int maxBytes, int maxPdus, long maxLatencyMillis) {
+        this.maxBytes = maxBytes;
+        this.maxPdus = maxPdus;
+        this.maxLatencyMillis = maxLatencyMillis;
+    }
+
+    public int getMaxBytes() {
+        return maxBytes;
+    }
+
+    public int getMaxPdus() {
+        return maxPdus;
+    }
+
+    public long getMaxLatencyMillis() {
+        return maxLatencyMillis;
+    }
+
+    /**
+     * @return true if the pdus are bundled
+     */
+    public boolean isEnabled() {
+        return maxBytes > 0;
+    }
+
+    @Override
+    public String toString() {
+        return "BundlingPolicy [maxBytes=" + maxBytes + ", maxPdus=" + maxPdus + ", maxLatencyMillis=" + maxLatencyMillis + "]";
+    }
+}
@@ -0,0 +1,178 @@
+/*******************************************************************************
+ * Copyright (C) Her Majesty the Queen in Right of Canada, 
+ * as represented by the Minister of National Defence, 2018
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package de.fraunhofer.iosb.tc_lib.dis;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Result of a {@link CapacityFinder} search: the measures of each step, and the knee where the SUT exceeded a bound.
+ */
+public class CapacityCurve {
+
+    private final CapacityProfile profile;
+    private final List<Step> steps = new ArrayList<>();
+    private Step knee = null;
+
+    /**
+     * @param profile the profile of the search
+     */
+    public CapacityCurve(CapacityProfile profile) {
+        this.profile = profile;
+    }
+
+    /**
+     * Record a step, the first step exceeding a bound of the profile is the knee
+     * @param step the measures of the step
+     */
+    void addStep(Step step) {
+        steps.add(step);
+        if (knee == null && !isWithinBounds(step)) {
+            knee = step;
+        }
+    }
+
+    /**
+     * @param step the measures of a step
+     * @return true if the loss and the latency of this step are within the bounds of the profile
+     */
+    public boolean isWithinBounds(Step step) {
+        return step.getLoss() <= profile.getMaxLoss()
+                && step.getLatencyP99Nanos() <= TimeUnit.MILLISECONDS.toNanos(profile.getMaxLatencyMillis());
+    }
+
+    public CapacityProfile getProfile() {
+        return profile;
+    }
+
+    public List<Step> getSteps() {
+        return Collections.unmodifiableList(steps);
+    }
+
+    /**
+     * @return the first step exceeding a bound, null if the search reached the maximum within bounds
+     */
+    public Step getKnee() {
+        return knee;
+    }
+
+    /**
+     * @return the largest number of entities handled within bounds, 0 if even the first step exceeded a bound
+     */
+    public int getCapacity() {
+        int capacity = 0;
+        for (Step step : steps) {
+            if (step == knee) {
+                break;
+            }
+            capacity = step.getEntityCount();
+        }
+        return capacity;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        builder.append(String.format("Capacity curve %s%n", profile));
+        builder.append(String.format("%10s %12s %12s %8s %10s %10s %10s %10s%n", "entities", "sent/s", "reflected/s",
+                "loss %", "p50 (ms)", "p90 (ms)", "p99 (ms)", "max (ms)"));
+        for (Step step : steps) {
+            builder.append(String.format("%10d %12.1f %12.1f %8.2f %10.2f %10.2f %10.2f %10.2f%s%n", step.getEntityCount(),
+                    step.getSentRate(), step.getReflectedRate(), step.getLoss() * 100, step.getLatencyP50Nanos() / 1e6,
+                    step.getLatencyP90Nanos() / 1e6, step.getLatencyP99Nanos() / 1e6, step.getLatencyMaxNanos() / 1e6,
+                    step == knee ? " <- knee" : ""));
+        }
+        builder.append("Capacity : ").append(getCapacity()).append(" entities");
+        return builder.toString();
+    }
+
+    /**
+     * Measures of one step of the search
+     */
+    public static final class Step {
+
+        private final int entityCount;
+        private final double sentRate;
+        private final double reflectedRate;
+        private final double loss;
+        private final long latencyP50Nanos;
+        private final long latencyP90Nanos;
+        private final long latencyP99Nanos;
+        private final long latencyMaxNanos;
+
+        /**
+         * @param entityCount number of stimulated entities
+         * @param sentRate rate achieved by the sender, in pdus per second
+         * @param reflectedRate rate of the pdus reflected by the SUT, in pdus per second
+         * @param loss fraction of the pdus sent never reflected
+         * @param latency reflection latencies of the step
+         */
+        Step(int entityCount, double sentRate, double reflectedRate, double loss, LatencyHistogram latency) {
+            this.entityCount = entityCount;
+            this.sentRate = sentRate;
+            this.reflectedRate = reflectedRate;
+            this.loss = loss;
+            this.latencyP50Nanos = latency.getValueAtPercentile(50);
+            this.latencyP90Nanos = latency.getValueAtPercentile(90);
+            this.latencyP99Nanos = latency.getValueAtPercentile(99);
+            this.latencyMaxNanos = latency.getMax();
+        }
+
+        public int getEntityCount() {
+            return entityCount;
+        }
+
+        /**
+         * @return rate achieved by the sender, in pdus per second
+         */
+        public double getSentRate() {
+            return sentRate;
+        }
+
+        /**
+         * @return rate of the pdus reflected by the SUT, in pdus per second
+         */
+        public double getReflectedRate() {
+            return reflectedRate;
+        }
+
+        /**
+         * @return fraction of the pdus sent never reflected by the SUT
+         */
+        public double getLoss() {
+            return loss;
+        }
+
+        public long getLatencyP50Nanos() {
+            return latencyP50Nanos;
+        }
+
+        public long getLatencyP90Nanos() {
+            return latencyP90Nanos;
+        }
+
+        public long getLatencyP99Nanos() {
+            return latencyP99Nanos;
+        }
+
+        public long getLatencyMaxNanos() {
+            return latencyMaxNanos;
+        }
+    }
+}
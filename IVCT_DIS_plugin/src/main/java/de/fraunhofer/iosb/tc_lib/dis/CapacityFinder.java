@@ -0,0 +1,179 @@
+/*******************************************************************************
+ * Copyright (C) Her Majesty the Queen in Right of Canada, 
+ * as represented by the Minister of National Defence, 2018
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package de.fraunhofer.iosb.tc_lib.dis;
+
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ca.drdc.ivct.fom.base.BaseEntity;
+import edu.nps.moves.disenum.PduType;
+
+/**
+ * Search the number of entities a SUT can reflect within loss and latency bounds.
+ * <p>
+ * Each step stimulates a synthetic population through a {@link LoadGenerator}
+ * while listening to the {@link DisReceiver} for the EntityStatePdu of the same
+ * entities sent back by the SUT. A reflected pdu is matched with its send by a
+ * {@link SendHistory}, which gives its latency; the sends left unmatched are the
+ * loss. Each step numbers its entities in its own applications, so the late
+ * reflections of a step are not taken for reflections of the next one. The
+ * population grows step by step until the loss or the 99th percentile of the
+ * latency exceeds its bound: the knee of the curve.
+ * <p>
+ * The receiver must not receive the pdus of the sender directly, they would be
+ * taken for reflections.
+ */
+public class CapacityFinder {
+
+    private static Logger logger = LoggerFactory.getLogger(CapacityFinder.class);
+
+    private final DisSender sender;
+    private final DisReceiver receiver;
+    private final List<BaseEntity> fadEntities;
+    private final CapacityProfile profile;
+    private final long seed;
+
+    private volatile boolean running = false;
+    private volatile LoadGenerator currentGenerator;
+    private int nextApplication;
+
+    /**
+     * @param sender the sender of the stimulation
+     * @param receiver the receiver of the reflections
+     * @param fadEntities the FAD entities replicated to the synthetic population
+     * @param profile steps and bounds of the search
+     * @param seed seed of the position jitter of the population
+     */
+    public CapacityFinder(DisSender sender, DisReceiver receiver, List<BaseEntity> fadEntities, CapacityProfile profile, long seed) {
+        this.sender = sender;
+        this.receiver = receiver;
+        this.fadEntities = fadEntities;
+        this.profile = profile;
+        this.seed = seed;
+    }
+
+    /**
+     * Run the search on the calling thread, until the knee, the maximum number of entities or a call to {@link #stop()}
+     * @return the measures of each step
+     */
+    public CapacityCurve run() {
+        logger.info("Starting capacity search, {}", profile);
+        CapacityCurve curve = new CapacityCurve(profile);
+        running = true;
+        nextApplication = LoadGenerator.firstSyntheticApplication(fadEntities);
+        for (int entityCount = profile.getStartEntities(); running && entityCount <= profile.getMaxEntities();
+                entityCount += profile.getStepEntities()) {
+            CapacityCurve.Step step = runStep(entityCount);
+            if (step == null) {
+                break;
+            }
+            curve.addStep(step);
+            logger.info("Capacity step of {} entities : sent {}/s, reflected {}/s, loss {}, p99 {} ms", entityCount,
+                    Math.round(step.getSentRate()), Math.round(step.getReflectedRate()), step.getLoss(),
+                    step.getLatencyP99Nanos() / 1e6);
+            if (curve.getKnee() != null) {
+                break;
+            }
+        }
+        running = false;
+        logger.info("{}", curve);
+        return curve;
+    }
+
+    /**
+     * @return the measures of the step, null if the search was interrupted
+     */
+    private CapacityCurve.Step runStep(int entityCount) {
+        double rate = entityCount * profile.getEntityRate();
+        int applications = LoadGenerator.applicationCount(entityCount);
+        if (nextApplication + applications - 1 > 0xFFFF) {
+            // the first steps are long over, their applications can be used again
+            nextApplication = LoadGenerator.firstSyntheticApplication(fadEntities);
+        }
+        SendHistory sendHistory = new SendHistory(entityCount, SendHistory.DEFAULT_DEPTH);
+        LoadGenerator generator = new LoadGenerator(sender, fadEntities,
+                new LoadProfile(entityCount, rate, rate, 0, profile.getStepMillis(), LoadProfile.DEFAULT_POSITION_JITTER), seed,
+                nextApplication, sendHistory);
+        nextApplication += applications;
+        Reflections reflections = new Reflections(generator, sendHistory);
+        currentGenerator = generator;
+        receiver.addListener(reflections);
+        long start = System.nanoTime();
+        try {
+            LoadReport report = generator.run();
+            // let the last reflections of the step arrive
+            Thread.sleep(profile.getMaxLatencyMillis());
+            double elapsedSeconds = (System.nanoTime() - start) / 1e9;
+            long sent = sendHistory.getSentCount();
+            double loss = sent > 0 ? 1 - (double) sendHistory.getMatchedCount() / sent : 0;
+            return new CapacityCurve.Step(entityCount, report.getAchievedRate(), reflections.pduCount.sum() / elapsedSeconds,
+                    Math.max(0, loss), reflections.latency);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } finally {
+            receiver.removeListener(reflections);
+            currentGenerator = null;
+        }
+    }
+
+    /**
+     * Stop the search from another thread, the curve holds the steps completed until now
+     */
+    public void stop() {
+        running = false;
+        LoadGenerator generator = currentGenerator;
+        if (generator != null) {
+            generator.stop();
+        }
+    }
+
+    /**
+     * Reflections of the synthetic entities of one step, notified by the decode threads of the receiver
+     */
+    private static final class Reflections implements PduListener {
+
+        private final LoadGenerator generator;
+        private final SendHistory sendHistory;
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final LongAdder pduCount = new LongAdder();
+
+        private Reflections(LoadGenerator generator, SendHistory sendHistory) {
+            this.generator = generator;
+            this.sendHistory = sendHistory;
+        }
+
+        @Override
+        public void pduStored(ReceivedPdu receivedPdu) {
+            if (receivedPdu.getPduType() != PduType.ENTITY_STATE.value) {
+                return;
+            }
+            int index = generator.indexOf(receivedPdu.getEntityKey());
+            if (index < 0) {
+                return;
+            }
+            pduCount.increment();
+            long latencyNanos = sendHistory.match(index, receivedPdu.getTimestamp(), System.nanoTime());
+            if (latencyNanos >= 0) {
+                latency.record(latencyNanos);
+            }
+        }
+    }
+}
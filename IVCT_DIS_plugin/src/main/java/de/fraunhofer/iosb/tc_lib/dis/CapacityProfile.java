@@ -0,0 +1,106 @@
+/*******************************************************************************
+ * Copyright (C) Her Majesty the Queen in Right of Canada, 
+ * as represented by the Minister of National Defence, 2018
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package de.fraunhofer.iosb.tc_lib.dis;
+
+/**
+ * Steps and bounds of a {@link CapacityFinder} search.
+ * <p>
+ * The number of stimulated entities starts at the start count and grows by the
+ * step count until the maximum, or until the SUT exceeds the loss or the
+ * latency bound. Each entity is sent at the same rate at every step.
+ */
+public class CapacityProfile {
+
+    public static final double DEFAULT_ENTITY_RATE = 1.0;
+
+    public static final long DEFAULT_STEP_MILLIS = 10000;
+
+    /**
+     * Fraction of the stimulated entities the SUT may never reflect
+     */
+    public static final double DEFAULT_MAX_LOSS = 0.01;
+
+    public static final long DEFAULT_MAX_LATENCY_MILLIS = 100;
+
+    private final int startEntities;
+    private final int stepEntities;
+    private final int maxEntities;
+    private final double entityRate;
+    private final long stepMillis;
+    private final double maxLoss;
+    private final long maxLatencyMillis;
+
+    /**
+     * @param startEntities number of entities of the first step
+     * @param stepEntities number of entities added at each step
+     * @param maxEntities number of entities above which the search stops
+     * @param entityRate number of EntityStatePdu sent per second for each entity
+     * @param stepMillis duration of a step in milliseconds
+     * @param maxLoss fraction of the stimulated entities the SUT may never reflect during a step
+     * @param maxLatencyMillis bound on the 99th percentile of the reflection latency in milliseconds
+     */
+    public CapacityProfile(int startEntities, int stepEntities, int maxEntities, double entityRate, long stepMillis,
+            double maxLoss, long maxLatencyMillis) {
+        if (startEntities <= 0 || stepEntities <= 0 || maxEntities < startEntities || entityRate <= 0 || stepMillis <= 0) {
+            throw new IllegalArgumentException("Invalid capacity profile, startEntities=" + startEntities
+                    + " stepEntities=" + stepEntities + " maxEntities=" + maxEntities + " entityRate=" + entityRate
+                    + " stepMillis=" + stepMillis);
+        }
+        this.startEntities = startEntities;
+        this.stepEntities = stepEntities;
+        this.maxEntities = maxEntities;
+        this.entityRate = entityRate;
+        this.stepMillis = stepMillis;
+        this.maxLoss = maxLoss;
+        this.maxLatencyMillis = maxLatencyMillis;
+    }
+
+    public int getStartEntities() {
+        return startEntities;
+    }
+
+    public int getStepEntities() {
+        return stepEntities;
+    }
+
+    public int getMaxEntities() {
+        return maxEntities;
+    }
+
+    public double getEntityRate() {
+        return entityRate;
+    }
+
+    public long getStepMillis() {
+        return stepMillis;
+    }
+
+    public double getMaxLoss() {
+        return maxLoss;
+    }
+
+    public long getMaxLatencyMillis() {
+        return maxLatencyMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "CapacityProfile [startEntities=" + startEntities + ", stepEntities=" + stepEntities + ", maxEntities="
+            + maxEntities + ", entityRate=" + entityRate + ", stepMillis=" + stepMillis + ", maxLoss=" + maxLoss
+            + ", maxLatencyMillis=" + maxLatencyMillis + "]";
+    }
+}
@@ -0,0 +1,184 @@
+/*******************************************************************************
+ * Copyright (C) Her Majesty the Queen in Right of Canada, 
+ * as represented by the Minister of National Defence, 2018
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package de.fraunhofer.iosb.tc_lib.dis;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import edu.nps.moves.dis.DeadReckoningParameter;
+import edu.nps.moves.dis.EntityID;
+import edu.nps.moves.dis.EntityStatePdu;
+import edu.nps.moves.dis.Vector3Double;
+import edu.nps.moves.dis.Vector3Float;
+import vcs.utility.spatial.Acceleration;
+import vcs.utility.spatial.DeadReckoner;
+import vcs.utility.spatial.EulerAngles;
+import vcs.utility.spatial.EulerDerivs;
+import vcs.utility.spatial.KinematicState;
+import vcs.utility.spatial.Velocity;
+import vcs.utility.spatial.WGSPosition;
+
+/**
+ * Decide which outbound EntityStatePdu to publish, the way a DIS simulation does.
+ * <p>
+ * The last state published for each entity is kept in a {@link DeadReckoner}.
+ * A new state is only published when it differs from the dead reckoned
+ * projection of the last one by more than the position or orientation
+ * threshold, when its appearance or dead reckoning algorithm changed, or when
+ * the heartbeat period elapsed since the last publication.
+ */
+public class DeadReckoningFilter {
+
+    /**
+     * Position threshold in meters, the usual DIS default
+     */
+    public static final double DEFAULT_POSITION_THRESHOLD = 1.0;
+
+    /**
+     * Orientation threshold in radians, 3 degrees as the usual DIS default
+     */
+    public static final double DEFAULT_ORIENTATION_THRESHOLD = Math.toRadians(3.0);
+
+    public static final long DEFAULT_HEARTBEAT_MILLIS = 5000;
+
+    private final double positionThreshold;
+    private final double orientationThreshold;
+    private final long heartbeatMillis;
+
+    private final Map<Long, Published> published = new ConcurrentHashMap<>();
+
+    private final AtomicLong publishedCount = new AtomicLong();
+    private final AtomicLong suppressedCount = new AtomicLong();
+
+    /**
+     * @param positionThreshold maximum position error in meters
+     * @param orientationThreshold maximum error on any Euler angle in radians
+     * @param heartbeatMillis maximum time between two publications of an entity in milliseconds
+     */
+    public DeadReckoningFilter(double positionThreshold, double orientationThreshold, long heartbeatMillis) {
+        this.positionThreshold = positionThreshold;
+        this.orientationThreshold = orientationThreshold;
+        this.heartbeatMillis = heartbeatMillis;
+    }
+
+    /**
+     * Compare a new state of an entity with the projection of its last published
+     * state. If it has to be published, it becomes the last published state.
+     * @param pdu the current true state of the entity
+     * @param nowMillis current time in milliseconds
+     * @return true if the pdu must be sent
+     */
+    public boolean shouldSend(EntityStatePdu pdu, long nowMillis) {
+        EntityID entityID = pdu.getEntityID();
+        long key = EntityStateTable.key(entityID.getSite(), entityID.getApplication(), entityID.getEntity());
+        int algorithm = algorithmOf(pdu);
+        KinematicState truth = toKinematicState(pdu, nowMillis / 1000.0);
+
+        Published last = published.get(key);
+        if (last != null
+                && nowMillis - last.publishTime < heartbeatMillis
+                && last.appearance == pdu.getEntityAppearance()
+                && last.reckoner.getDRAlgorithm() == algorithm
+                && !exceedsThresholds(last.reckoner.projectTo(truth.getTime()), truth)) {
+            suppressedCount.incrementAndGet();
+            return false;
+        }
+        published.put(key, new Published(new DeadReckoner(algorithm, truth), pdu.getEntityAppearance(), nowMillis));
+        publishedCount.incrementAndGet();
+        return true;
+    }
+
+    private boolean exceedsThresholds(KinematicState projected, KinematicState truth) {
+        return distance(projected.getPosition(), truth.getPosition()) > positionThreshold
+                || projected.getOrientation().differsFrom(truth.getOrientation(), orientationThreshold);
+    }
+
+    private static double distance(WGSPosition a, WGSPosition b) {
+        double dx = a.getX() - b.getX();
+        double dy = a.getY() - b.getY();
+        double dz = a.getZ() - b.getZ();
+        return Math.sqrt(dx * dx + dy * dy + dz * dz);
+    }
+
+    /**
+     * @return the dead reckoning algorithm of the pdu, static if it is not one of the 11 standard ones
+     */
+    private static int algorithmOf(EntityStatePdu pdu) {
+        DeadReckoningParameter parameters = pdu.getDeadReckoningParameters();
+        int algorithm = parameters != null ? parameters.getDeadReckoningAlgorithm() : 0;
+        return algorithm >= DeadReckoner.DR_ALGORITHIM_STEADY && algorithm <= DeadReckoner.DR_ALGORITHIM_REVW
+                ? algorithm : DeadReckoner.DR_ALGORITHIM_STEADY;
+    }
+
+    private static KinematicState toKinematicState(EntityStatePdu pdu, double time) {
+        Vector3Double location = pdu.getEntityLocation();
+        Vector3Float velocity = pdu.getEntityLinearVelocity();
+        DeadReckoningParameter parameters = pdu.getDeadReckoningParameters();
+        Vector3Float acceleration = parameters != null ? parameters.getEntityLinearAcceleration() : null;
+        Vector3Float angularVelocity = parameters != null ? parameters.getEntityAngularVelocity() : null;
+        return new KinematicState(time,
+                new WGSPosition(location.getX(), location.getY(), location.getZ()),
+                velocity != null ? new Velocity(velocity.getX(), velocity.getY(), velocity.getZ()) : new Velocity(0, 0, 0),
+                acceleration != null ? new Acceleration(acceleration.getX(), acceleration.getY(), acceleration.getZ())
+                        : new Acceleration(0, 0, 0),
+                new EulerAngles(pdu.getEntityOrientation().getPsi(), pdu.getEntityOrientation().getTheta(),
+                        pdu.getEntityOrientation().getPhi()),
+                angularVelocity != null ? new EulerDerivs(angularVelocity.getX(), angularVelocity.getY(), angularVelocity.getZ())
+                        : new EulerDerivs(0, 0, 0));
+    }
+
+    /**
+     * Forget the last published state of an entity, its next state is always published
+     * @param site site of the entity
+     * @param application application of the entity
+     * @param entity entity number of the entity
+     */
+    public void forget(int site, int application, int entity) {
+        published.remove(EntityStateTable.key(site, application, entity));
+    }
+
+    /**
+     * @return number of EntityStatePdu let through
+     */
+    public long getPublishedCount() {
+        return publishedCount.get();
+    }
+
+    /**
+     * @return number of EntityStatePdu suppressed because the dead reckoned state was close enough
+     */
+    public long getSuppressedCount() {
+        return suppressedCount.get();
+    }
+
+    /**
+     * Last published state of an entity
+     */
+    private static final class Published {
+
+        private final DeadReckoner reckoner;
+        private final int appearance;
+        private final long publishTime;
+
+        private Published(DeadReckoner reckoner, int appearance, long publishTime) {
+            this.reckoner = reckoner;
+            this.appearance = appearance;
+            this.publishTime = publishTime;
+        }
+    }
+}
@@ -0,0 +1,214 @@
+/*******************************************************************************
+ * Copyright (C) Her Majesty the Queen in Right of Canada, 
+ * as represented by the Minister of National Defence, 2018
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package de.fraunhofer.iosb.tc_lib.dis;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import edu.nps.moves.disenum.PduType;
+
+/**
+ * Decode stage of the {@link DisReceiver}: builds the {@link ReceivedPdu} of the
+ * raw pdus it is given and publishes them to its own {@link PduStore} and
+ * {@link EntityStateTable}, of which it is the single writer, then notifies
+ * the {@link PduListener} of the receiver.
+ * <p>
+ * An inline shard does this on the caller thread. Otherwise the raw pdus go
+ * through a {@link PduRing} drained by a dedicated decode thread, so the
+ * receiving thread never waits for the decode. The receiver always routes the
+ * pdus of one entity to the same shard, which keeps their order.
+ */
+public class DecodeShard implements Runnable {
+
+    private static Logger logger = LoggerFactory.getLogger(DecodeShard.class);
+
+    /**
+     * Empty polls spent yielding before the decode thread parks
+     */
+    private static final int IDLE_SPINS = 100;
+
+    /**
+     * Upper bound of a park, in case a wake up is missed
+     */
+    private static final long MAX_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final PduStore pduStore;
+    private final EntityStateTable entityStateTable = new EntityStateTable();
+
+    /**
+     * Listeners of the receiver, shared by every shard
+     */
+    private final List<PduListener> listeners;
+
+    /**
+     * Metrics of the receive path, null if disabled
+     */
+    private final ReceiveMetrics metrics;
+
+    /**
+     * Raw pdus waiting to be decoded, null for an inline shard
+     */
+    private final PduRing ring;
+
+    private volatile boolean running = false;
+    private volatile boolean sleeping = false;
+    private Thread thread;
+
+    /**
+     * @param pduStore the store receiving the pdus of this shard
+     * @param ringCapacity capacity of the ring feeding the decode thread, 0 to decode inline
+     * @param listeners listeners notified of each stored pdu, a thread-safe list
+     * @param metrics metrics of the receive path, null if disabled
+     */
+    public DecodeShard(PduStore pduStore, int ringCapacity, List<PduListener> listeners, ReceiveMetrics metrics) {
+        this.pduStore = pduStore;
+        this.listeners = listeners;
+        this.metrics = metrics;
+        this.ring = ringCapacity > 0 ? new PduRing(ringCapacity) : null;
+    }
+
+    /**
+     * Start the decode thread, does nothing for an inline shard
+     * @param name name of the decode thread
+     */
+    public void start(String name) {
+        if (ring == null) {
+            return;
+        }
+        running = true;
+        thread = new Thread(this, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stop the decode thread, the pdus still in the ring are discarded
+     */
+    public void stop() {
+        running = false;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    /**
+     * Hand a raw pdu to this shard. Must only be called by the receiving thread.
+     * @param data the pdu in IEEE 1278.1 format
+     * @param receiveTime reception time in milliseconds
+     * @param receiveNano reception time from {@link System#nanoTime()}, 0 if metrics are disabled
+     * @param sequence reception sequence number
+     */
+    public void publish(byte[] data, long receiveTime, long receiveNano, long sequence) {
+        if (ring == null) {
+            store(data, receiveTime, receiveNano, sequence);
+        } else if (ring.offer(data, receiveTime, receiveNano, sequence)) {
+            if (sleeping) {
+                LockSupport.unpark(thread);
+            }
+        } else if (metrics != null) {
+            metrics.ringDropped();
+        }
+    }
+
+    private void store(byte[] data, long receiveTime, long receiveNano, long sequence) {
+        if (metrics == null) {
+            store(new ReceivedPdu(data, receiveTime, sequence, null));
+            return;
+        }
+        long start = System.nanoTime();
+        metrics.recordQueueLatency(start - receiveNano);
+        store(new ReceivedPdu(data, receiveTime, sequence, metrics));
+        metrics.recordStoreLatency(System.nanoTime() - start);
+    }
+
+    private void store(ReceivedPdu receivedPdu) {
+        pduStore.add(receivedPdu);
+        if (receivedPdu.getPduType() == PduType.ENTITY_STATE.value) {
+            entityStateTable.put(receivedPdu);
+        }
+        for (PduListener listener : listeners) {
+            try {
+                listener.pduStored(receivedPdu);
+            } catch (RuntimeException e) {
+                // a failing listener must not stop the reception
+                logger.error("Error in a pdu listener", e);
+            }
+        }
+    }
+
+    @Override
+    public void run() {
+        int idleCount = 0;
+        while (running) {
+            byte[] data = ring.peekData();
+            if (data != null) {
+                store(data, ring.peekReceiveTime(), ring.peekReceiveNano(), ring.peekSequence());
+                ring.advance();
+                idleCount = 0;
+            } else if (idleCount < IDLE_SPINS) {
+                idleCount++;
+                Thread.yield();
+            } else {
+                sleeping = true;
+                if (ring.isEmpty()) {
+                    LockSupport.parkNanos(this, MAX_PARK_NANOS);
+                }
+                sleeping = false;
+            }
+        }
+    }
+
+    public PduStore getPduStore() {
+        return pduStore;
+    }
+
+    public EntityStateTable getEntityStateTable() {
+        return entityStateTable;
+    }
+
+    /**
+     * @return number of pdus waiting to be decoded
+     */
+    public int getRingOccupancy() {
+        return ring != null ? ring.size() : 0;
+    }
+
+    /**
+     * @return sequence number of the oldest pdu not stored yet, {@link Long#MAX_VALUE} if there is none
+     */
+    public long getOldestPendingSequence() {
+        return ring != null ? ring.oldestSequence() : Long.MAX_VALUE;
+    }
+
+    /**
+     * @return number of slots of the ring, 0 for an inline shard
+     */
+    public int getRingCapacity() {
+        return ring != null ? ring.capacity() : 0;
+    }
+
+    /**
+     * @return number of pdus dropped because the ring was full
+     */
+    public long getDroppedCount() {
+        return ring != null ? ring.getDroppedCount() : 0;
+    }
+}
@@ -16,15 +16,32 @@
  *******************************************************************************/
 package de.fraunhofer.iosb.tc_lib.dis;
 
-import java.net.SocketException;
-import java.net.UnknownHostException;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
 
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ca.drdc.ivct.fom.base.BaseEntity;
+import ca.drdc.ivct.fom.base.structs.EntityIdentifierStruct;
 import ca.drdc.ivct.fom.warfare.MunitionDetonation;
+import ca.drdc.ivct.fom.warfare.WeaponFire;
 import de.fraunhofer.iosb.tc_lib.BaseModel;
 import de.fraunhofer.iosb.tc_lib.TcInconclusive;
+import de.fraunhofer.iosb.tc_lib.converter.DisWireDecoder;
+import de.fraunhofer.iosb.tc_lib.converter.EntityStateView;
 import edu.nps.moves.dis.DetonationPdu;
+import edu.nps.moves.dis.EntityID;
 import edu.nps.moves.dis.EntityStatePdu;
 import edu.nps.moves.dis.FirePdu;
 import edu.nps.moves.dis.Pdu;
@@ -36,27 +53,169 @@ import edu.nps.moves.disenum.PduType;
  */
 public class DisManager implements BaseModel {
 
+    private static Logger logger = LoggerFactory.getLogger(DisManager.class);
+
+    private static final long SEND_PIPELINE_TERMINATION_TIMEOUT_MILLIS = 1000;
+
     private DisReceiver receiver;
     private DisSender sender;
 
+    /**
+     * Metrics of the receive path, null if disabled
+     */
+    private ReceiveMetrics receiveMetrics;
+    private ObjectName receiveMetricsName;
+
+    private final List<PduSubscription> subscriptions = new CopyOnWriteArrayList<>();
+
+    private final List<LatencyProbe> latencyProbes = new CopyOnWriteArrayList<>();
+
+    private HeartbeatScheduler heartbeatScheduler;
+
+    /**
+     * Suppress the EntityStatePdu close to their dead reckoned state, null to send every one
+     */
+    private final DeadReckoningFilter deadReckoningFilter;
+
+    /**
+     * Queue in front of the sender, null to send on the caller thread.
+     * Volatile as it is cleared by the termination while other threads may send.
+     */
+    private volatile SendPipeline sendPipeline;
+
+    /**
+     * Synthetic load configured for this test case, null if none
+     */
+    private final LoadProfile loadProfile;
+
+    /**
+     * Capacity search configured for this test case, null if none
+     */
+    private final CapacityProfile capacityProfile;
+
     public DisManager(DisTcParam param) throws TcInconclusive {
+        // each manager keeps its own entity history
+        this.deadReckoningFilter = param.isDeadReckoningEnabled()
+                ? new DeadReckoningFilter(param.getDeadReckoningPositionThreshold(),
+                        param.getDeadReckoningOrientationThreshold(), param.getDeadReckoningHeartbeatMillis())
+                : null;
+        this.loadProfile = param.getLoadProfile();
+        this.capacityProfile = param.getCapacityProfile();
+        if (param.isMetricsEnabled()) {
+            this.receiveMetrics = new ReceiveMetrics(param.getListeningPort());
+            registerReceiveMetrics(param.getListeningPort());
+        }
         try {
-            this.sender = new DisSender(param.getSutHostName(), param.getSutPort());
-            this.receiver = new DisReceiver(param.getListeningPort());
-        } catch (UnknownHostException | SocketException e) {
+            this.sender = new DisSender(param);
+            if (param.getSendQueueCapacity() > 0) {
+                this.sendPipeline = new SendPipeline(sender, param.getSendQueueCapacity(), param.getBackpressurePolicy(),
+                        this::pduNotSent);
+                this.sendPipeline.start();
+            }
+            this.receiver = new DisReceiver(param, receiveMetrics);
+        } catch (IOException e) {
+            if (sendPipeline != null) {
+                sendPipeline.terminate(SEND_PIPELINE_TERMINATION_TIMEOUT_MILLIS);
+                sendPipeline = null;
+            }
+            if (sender != null) {
+                sender.terminate();
+            }
+            unregisterReceiveMetrics();
             throw new TcInconclusive("Connection error : "+e.getMessage(), e);
         }
     }
 
+    private void registerReceiveMetrics(int port) {
+        try {
+            ObjectName name = new ObjectName("de.fraunhofer.iosb.tc_lib.dis:type=ReceiveMetrics,port=" + port);
+            ManagementFactory.getPlatformMBeanServer().registerMBean(receiveMetrics, name);
+            receiveMetricsName = name;
+        } catch (JMException e) {
+            logger.warn("Receive metrics not available through JMX : {}", e.getMessage());
+        }
+    }
+
+    private void unregisterReceiveMetrics() {
+        if (receiveMetricsName == null) {
+            return;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(receiveMetricsName);
+        } catch (JMException e) {
+            logger.warn("Could not unregister the receive metrics : {}", e.getMessage());
+        }
+        receiveMetricsName = null;
+    }
+
     
+    /**
+     * Send an EntityStatePdu, unless a dead reckoning filter is configured and the
+     * receivers can still dead reckon the entity within its thresholds.
+     * @param entityStatePdu the current state of the entity
+     */
     public void sendPdu(EntityStatePdu entityStatePdu) {
-        sender.sendPdu(entityStatePdu);
+        if (deadReckoningFilter != null && !deadReckoningFilter.shouldSend(entityStatePdu, System.currentTimeMillis())) {
+            return;
+        }
+        SendPipeline pipeline = sendPipeline;
+        if (pipeline != null) {
+            // a pdu dropped or rejected by the pipeline is handed back to pduNotSent
+            pipeline.submit(entityStatePdu);
+        } else {
+            try {
+                sender.sendPdu(entityStatePdu);
+            } catch (RuntimeException e) {
+                pduNotSent(entityStatePdu);
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Forget the state of an entity recorded as published by the dead reckoning
+     * filter when it was never sent, so that its next state is sent.
+     */
+    private void pduNotSent(Pdu pdu) {
+        if (deadReckoningFilter != null && pdu instanceof EntityStatePdu) {
+            EntityID entityID = ((EntityStatePdu) pdu).getEntityID();
+            deadReckoningFilter.forget(entityID.getSite(), entityID.getApplication(), entityID.getEntity());
+        }
+    }
+
+    /**
+     * @return the asynchronous send queue, null if the pdus are sent on the caller thread
+     */
+    public SendPipeline getSendPipeline() {
+        return sendPipeline;
+    }
+
+    /**
+     * @return the dead reckoning filter of the outbound EntityStatePdu, null if every one is sent
+     */
+    public DeadReckoningFilter getDeadReckoningFilter() {
+        return deadReckoningFilter;
     }
     
     public List<EntityStatePdu> getReceivedEntities() {
         return this.receiver.getReceivedEntityStatePdus();
     }
 
+    /**
+     * @param entityIdentifier the identifier of the entity
+     * @return the latest EntityStatePdu received for this entity, null if none was received
+     */
+    public EntityStatePdu getLatestEntityState(EntityIdentifierStruct entityIdentifier) {
+        return this.receiver.getLatestEntityState(EntityStateTable.key(entityIdentifier.getSite(), entityIdentifier.getApplication(), entityIdentifier.getEntity()));
+    }
+
+    /**
+     * @return the latest EntityStatePdu received for each entity, one per entity
+     */
+    public List<EntityStatePdu> getLatestEntityStates() {
+        return this.receiver.getLatestEntityStates();
+    }
+
     public List<FirePdu> getReceivedFirePdu() {
         return this.receiver.getReceivedFirePdus();
     }
@@ -65,14 +224,327 @@ public class DisManager implements BaseModel {
         return this.receiver.getReceivedDetonationPdus();
     }
 
+    /**
+     * @return all the EntityStatePdu received yet, decoded straight from their bytes
+     */
+    public List<BaseEntity> getReceivedBaseEntities() {
+        return decode(this.receiver.getReceivedPdus(PduType.ENTITY_STATE), DisWireDecoder::decodeEntityState);
+    }
+
+    /**
+     * @return the latest EntityStatePdu received for each entity, decoded straight from their bytes
+     */
+    public List<BaseEntity> getLatestBaseEntities() {
+        return decode(this.receiver.getLatestReceivedEntityStates(), DisWireDecoder::decodeEntityState);
+    }
+
+    /**
+     * @return all the FirePdu received yet, decoded straight from their bytes
+     */
+    public List<WeaponFire> getReceivedWeaponFires() {
+        return decode(this.receiver.getReceivedPdus(PduType.FIRE), DisWireDecoder::decodeFire);
+    }
+
+    /**
+     * @return all the DetonationPdu received yet, decoded straight from their bytes
+     */
+    public List<MunitionDetonation> getReceivedMunitionDetonations() {
+        return decode(this.receiver.getReceivedPdus(PduType.DETONATION), DisWireDecoder::decodeDetonation);
+    }
+
+    /**
+     * Scan all the EntityStatePdu received yet through a single view, without decoding them
+     * @param consumer called with the view pointed at each pdu in turn, the view must not be kept
+     */
+    public void scanReceivedEntities(Consumer<? super EntityStateView> consumer) {
+        scan(this.receiver.getReceivedPdus(PduType.ENTITY_STATE), consumer);
+    }
+
+    /**
+     * Scan the latest EntityStatePdu of each entity through a single view, without decoding them
+     * @param consumer called with the view pointed at each pdu in turn, the view must not be kept
+     */
+    public void scanLatestEntities(Consumer<? super EntityStateView> consumer) {
+        scan(this.receiver.getLatestReceivedEntityStates(), consumer);
+    }
+
+    private static void scan(List<ReceivedPdu> receivedPdus, Consumer<? super EntityStateView> consumer) {
+        EntityStateView view = new EntityStateView();
+        for (ReceivedPdu receivedPdu : receivedPdus) {
+            try {
+                view.wrap(receivedPdu.getBytes());
+            } catch (IllegalArgumentException e) {
+                logger.warn("Skipping a malformed pdu received at {} : {}", receivedPdu.getReceiveTime(), e.getMessage());
+                continue;
+            }
+            consumer.accept(view);
+        }
+    }
+
+    /**
+     * Decode the received pdus without open-dis, a malformed pdu is logged and skipped
+     */
+    private static <T> List<T> decode(List<ReceivedPdu> receivedPdus, Function<ByteBuffer, T> decoder) {
+        List<T> decodedList = new ArrayList<>(receivedPdus.size());
+        for (ReceivedPdu receivedPdu : receivedPdus) {
+            try {
+                decodedList.add(decoder.apply(ByteBuffer.wrap(receivedPdu.getBytes())));
+            } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+                logger.warn("Skipping a malformed pdu received at {} : {}", receivedPdu.getReceiveTime(), e.getMessage());
+            }
+        }
+        return decodedList;
+    }
+
+    /**
+     * @param type the pdu type to read
+     * @return the pdus of this type evicted from memory by the retention policy
+     * @throws TcInconclusive if the spill file could not be read
+     */
+    public List<Pdu> getSpilledPdus(PduType type) throws TcInconclusive {
+        try {
+            return this.receiver.getSpilledPdus(type);
+        } catch (IOException e) {
+            throw new TcInconclusive("Could not read the spilled pdus : " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Wait until enough entities have an EntityStatePdu matching the predicate, instead of
+     * sleeping for the whole waiting period.
+     * @param predicate condition on the EntityStatePdu, null to accept any
+     * @param count number of distinct entities to wait for
+     * @param timeout maximum time to wait in milliseconds
+     * @return the latest matching EntityStatePdu of each entity, fewer than count if the timeout elapsed
+     * @throws TcInconclusive if the wait is interrupted
+     */
+    public List<EntityStatePdu> awaitEntities(Predicate<? super EntityStatePdu> predicate, int count, long timeout) throws TcInconclusive {
+        return await(PduType.ENTITY_STATE, EntityStatePdu.class, predicate, count, true, timeout);
+    }
+
+    /**
+     * @param predicate condition on the FirePdu, null to accept any
+     * @param count number of FirePdu to wait for
+     * @param timeout maximum time to wait in milliseconds
+     * @return the matching FirePdu, fewer than count if the timeout elapsed
+     * @throws TcInconclusive if the wait is interrupted
+     */
+    public List<FirePdu> awaitFire(Predicate<? super FirePdu> predicate, int count, long timeout) throws TcInconclusive {
+        return await(PduType.FIRE, FirePdu.class, predicate, count, false, timeout);
+    }
+
+    /**
+     * @param predicate condition on the DetonationPdu, null to accept any
+     * @param count number of DetonationPdu to wait for
+     * @param timeout maximum time to wait in milliseconds
+     * @return the matching DetonationPdu, fewer than count if the timeout elapsed
+     * @throws TcInconclusive if the wait is interrupted
+     */
+    public List<DetonationPdu> awaitDetonation(Predicate<? super DetonationPdu> predicate, int count, long timeout) throws TcInconclusive {
+        return await(PduType.DETONATION, DetonationPdu.class, predicate, count, false, timeout);
+    }
+
+    private <T extends Pdu> List<T> await(PduType type, Class<T> pduClass, Predicate<? super T> predicate, int count,
+            boolean keyedByEntity, long timeout) throws TcInconclusive {
+        try {
+            return this.receiver.await(type, pduClass, predicate, count, keyedByEntity, timeout);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new TcInconclusive("Interrupted while waiting for " + type, e);
+        }
+    }
+
+    /**
+     * @return the scheduler re-sending the EntityStatePdu of the entities added to it, started on first call
+     */
+    public synchronized HeartbeatScheduler getHeartbeatScheduler() {
+        if (heartbeatScheduler == null) {
+            heartbeatScheduler = new HeartbeatScheduler(sender);
+            heartbeatScheduler.start();
+        }
+        return heartbeatScheduler;
+    }
+
+    /**
+     * @return the cursor from which the pdus received from now on can be read with {@link #readSince(long, PduType)}
+     */
+    public long getCursor() {
+        return this.receiver.getCursor();
+    }
+
+    /**
+     * Read only the pdus received since the previous read.
+     * @param cursor the cursor returned by the previous read or by {@link #getCursor()}, 0 to read from the beginning
+     * @param type the pdu type to read
+     * @return the new pdus of this type and the cursor of the next read
+     */
+    public PduBatch readSince(long cursor, PduType type) {
+        return this.receiver.readSince(cursor, type);
+    }
+
+    /**
+     * Start a new epoch between test cases: the pdus received so far are dropped
+     * in constant time.
+     * @return the cursor of the first pdu of the new epoch
+     */
+    public long resetEpoch() {
+        this.receiver.clearList();
+        return this.receiver.getCursor();
+    }
+
+    /**
+     * Deliver each pdu of a type to a consumer as soon as it is stored.
+     * @param type the pdu type to deliver
+     * @param consumer called on a thread of the subscription for each pdu
+     * @return the subscription, to cancel it
+     */
+    public PduSubscription subscribe(PduType type, Consumer<? super Pdu> consumer) {
+        return subscribe(type, consumer, null);
+    }
+
+    /**
+     * Deliver each pdu of a type matching a filter to a consumer as soon as it is stored.
+     * The consumer has its own bounded queue, a slow consumer loses pdus but never
+     * delays the reception.
+     * @param type the pdu type to deliver
+     * @param consumer called on a thread of the subscription for each matching pdu
+     * @param filter condition on the pdus to deliver, null to deliver every pdu of this type
+     * @return the subscription, to cancel it
+     */
+    public PduSubscription subscribe(PduType type, Consumer<? super Pdu> consumer, Predicate<? super Pdu> filter) {
+        PduSubscription subscription = new PduSubscription(receiver, type, consumer, filter, PduSubscription.DEFAULT_QUEUE_CAPACITY);
+        subscriptions.removeIf(PduSubscription::isCancelled);
+        subscriptions.add(subscription);
+        subscription.start();
+        return subscription;
+    }
+
+    /**
+     * @return number of pdus dropped because a decode worker could not keep up
+     */
+    public long getDroppedPduCount() {
+        return this.receiver.getDroppedPduCount();
+    }
+
+    /**
+     * @return number of pdus waiting to be decoded
+     */
+    public int getRingOccupancy() {
+        return this.receiver.getRingOccupancy();
+    }
+
+    /**
+     * @return the metrics of the receive path, null if disabled in the configuration
+     */
+    public ReceiveMetrics getReceiveMetrics() {
+        return receiveMetrics;
+    }
+
+    /**
+     * Send the synthetic load configured in the test case parameters on the calling thread,
+     * bypassing the dead reckoning filter and the send queue.
+     * @param fadEntities the FAD entities replicated to the synthetic population
+     * @return the rate achieved against the configured profile
+     * @throws TcInconclusive if no load is configured
+     */
+    public LoadReport generateLoad(List<BaseEntity> fadEntities) throws TcInconclusive {
+        if (loadProfile == null) {
+            throw new TcInconclusive("The key 'load' was not found in the configuration");
+        }
+        return generateLoad(fadEntities, loadProfile);
+    }
+
+    /**
+     * Send a synthetic load on the calling thread, bypassing the dead reckoning filter and the send queue.
+     * @param fadEntities the FAD entities replicated to the synthetic population
+     * @param profile the shape of the load
+     * @return the rate achieved against the profile
+     */
+    public LoadReport generateLoad(List<BaseEntity> fadEntities, LoadProfile profile) {
+        return new LoadGenerator(sender, fadEntities, profile, System.nanoTime()).run();
+    }
+
+    /**
+     * Start measuring the reaction time of the SUT to a stimulus, until {@link LatencyProbe#stop()} or the termination.
+     * The stimuli bypass the dead reckoning filter and the send queue.
+     * @param stimulus an EntityStatePdu, FirePdu or DetonationPdu, owned by the probe afterward
+     * @param rateHz number of stimuli sent per second
+     * @return the running probe, holding the latency percentiles
+     */
+    public LatencyProbe startLatencyProbe(Pdu stimulus, double rateHz) {
+        return startLatencyProbe(stimulus, rateHz, LatencyProbe.DEFAULT_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * Start measuring the reaction time of the SUT to a stimulus, until {@link LatencyProbe#stop()} or the termination.
+     * The stimuli bypass the dead reckoning filter and the send queue.
+     * @param stimulus an EntityStatePdu, FirePdu or DetonationPdu, owned by the probe afterward
+     * @param rateHz number of stimuli sent per second
+     * @param timeoutMillis time after which a stimulus without response is timed out
+     * @return the running probe, holding the latency percentiles
+     */
+    public LatencyProbe startLatencyProbe(Pdu stimulus, double rateHz, long timeoutMillis) {
+        LatencyProbe probe = new LatencyProbe(sender, receiver, stimulus, rateHz, timeoutMillis);
+        latencyProbes.add(probe);
+        probe.start();
+        return probe;
+    }
+
+    /**
+     * Search the capacity of the SUT as configured in the test case parameters, on the calling thread
+     * @param fadEntities the FAD entities replicated to the synthetic population
+     * @return the capacity curve of the SUT
+     * @throws TcInconclusive if no capacity search is configured
+     */
+    public CapacityCurve findCapacity(List<BaseEntity> fadEntities) throws TcInconclusive {
+        if (capacityProfile == null) {
+            throw new TcInconclusive("The key 'capacity' was not found in the configuration");
+        }
+        return new CapacityFinder(sender, receiver, fadEntities, capacityProfile, System.nanoTime()).run();
+    }
+
+    /**
+     * @return the destinations of the sent pdus, with their own sent and error counters
+     */
+    public List<SendDestination> getSendDestinations() {
+        return sender.getDestinations();
+    }
+
 //    public List<Pdu> getPdus() {
 //        return this.receiver.getReceivedPdus();
 //    }
 
     @Override
     public void terminateRti() {
+        synchronized (this) {
+            if (heartbeatScheduler != null) {
+                heartbeatScheduler.stop();
+                heartbeatScheduler = null;
+            }
+        }
+        for (PduSubscription subscription : subscriptions) {
+            subscription.cancel();
+        }
+        subscriptions.clear();
+        for (LatencyProbe probe : latencyProbes) {
+            probe.stop();
+        }
+        latencyProbes.clear();
         receiver.terminate();
+        if (sendPipeline != null) {
+            sendPipeline.terminate(SEND_PIPELINE_TERMINATION_TIMEOUT_MILLIS);
+            sendPipeline = null;
+        }
         sender.terminate();
+        for (SendDestination destination : sender.getDestinations()) {
+            if (destination.getErrorCount() > 0) {
+                logger.warn("{}", destination);
+            }
+        }
+        if (receiveMetrics != null) {
+            logger.info("{}", receiveMetrics);
+            unregisterReceiveMetrics();
+        }
         receiver = null;
         sender = null;
     }
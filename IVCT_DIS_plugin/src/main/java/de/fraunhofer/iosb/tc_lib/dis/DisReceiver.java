@@ -19,83 +19,400 @@ package de.fraunhofer.iosb.tc_lib.dis;
 import java.io.IOException;
 import java.net.DatagramPacket;
 import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
 import java.net.SocketException;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Predicate;
 
 import edu.nps.moves.dis.DetonationPdu;
 import edu.nps.moves.dis.EntityStatePdu;
 import edu.nps.moves.dis.FirePdu;
 import edu.nps.moves.dis.Pdu;
 import edu.nps.moves.disenum.PduType;
-import edu.nps.moves.disutil.PduFactory;
 
 /**
- * Listen on specified port for Dis pdu and cumulate them in a list.
+ * Listen on specified port for Dis pdu and cumulate them in the {@link PduStore} of one or more {@link DecodeShard}.
  */
 public class DisReceiver {
 
     public static final int MAX_PDU_SIZE = 8192;
 
+    /**
+     * Size of the PDU header common to every PDU type
+     */
+    public static final int PDU_HEADER_SIZE = 12;
+
+    /**
+     * Offset of the length field in the PDU header
+     */
+    private static final int PDU_LENGTH_OFFSET = 8;
+
+    /**
+     * Slots of the ring feeding each decode worker when none is specified
+     */
+    public static final int DEFAULT_RING_CAPACITY = 4096;
+
+    /**
+     * Way the datagrams are read from the network
+     */
+    public enum ReceiveMode {
+        /**
+         * Blocking DatagramSocket
+         */
+        SOCKET,
+        /**
+         * DatagramChannel reading into a reused direct buffer
+         */
+        CHANNEL
+    }
+
     /**
      * Thread responsible for receiving pdus
      */
     private ReceiverThread receiverThread;
     
     /**
-     * List of entity received
+     * Decode stages, each one owning the pdus of a subset of the entities
+     */
+    private final DecodeShard[] shards;
+
+    /**
+     * Notified of each pdu stored by any shard
      */
-    private List<Pdu> receivedPdu = Collections.synchronizedList(new ArrayList<>());
+    private final List<PduListener> listeners = new CopyOnWriteArrayList<>();
 
-    public DisReceiver(int port) throws SocketException {
-        this.receiverThread = new ReceiverThread(port);
+    /**
+     * Sequence number of the next pdu, published by the receiver thread after each datagram
+     */
+    private volatile long ingestedSequence = 0;
+
+    /**
+     * Metrics of the receive path, null if disabled
+     */
+    private final ReceiveMetrics metrics;
+
+    /**
+     * File receiving the pdus evicted by the retention policy, null if they are discarded
+     */
+    private final PduSpillFile spillFile;
+
+    public DisReceiver(int port) throws IOException {
+        this(port, ReceiveMode.SOCKET, RetentionPolicy.UNLIMITED, 0, DEFAULT_RING_CAPACITY, null);
+    }
+
+    /**
+     * @param param the test case parameters holding the listening port, the receive mode, the retention policy
+     * and the decode workers
+     * @throws IOException if the socket, the channel or the spill file could not be opened
+     */
+    public DisReceiver(DisTcParam param) throws IOException {
+        this(param, null);
+    }
+
+    /**
+     * @param param the test case parameters holding the listening port, the receive mode, the retention policy
+     * and the decode workers
+     * @param metrics metrics recording the receive path, null to disable them
+     * @throws IOException if the socket, the channel or the spill file could not be opened
+     */
+    public DisReceiver(DisTcParam param, ReceiveMetrics metrics) throws IOException {
+        this(param.getListeningPort(), param.getReceiveMode(), param.getRetentionPolicy(),
+                param.getDecodeWorkers(), param.getRingCapacity(), metrics);
+    }
+
+    /**
+     * @param port the port to listen on
+     * @param mode the way datagrams are read from the network
+     * @param retentionPolicy bounds on the pdus kept in memory
+     * @param decodeWorkers number of decode threads, 0 to decode on the receiver thread
+     * @param ringCapacity slots of the ring feeding each decode thread
+     * @param metrics metrics recording the receive path, null to disable them
+     * @throws IOException if the socket, the channel or the spill file could not be opened
+     */
+    private DisReceiver(int port, ReceiveMode mode, RetentionPolicy retentionPolicy,
+            int decodeWorkers, int ringCapacity, ReceiveMetrics metrics) throws IOException {
+        this.metrics = metrics;
+        this.spillFile = retentionPolicy.getSpillFile() != null ? new PduSpillFile(retentionPolicy.getSpillFile()) : null;
+        int shardCount = Math.max(1, decodeWorkers);
+        RetentionPolicy shardPolicy = retentionPolicy.divide(shardCount);
+        this.shards = new DecodeShard[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = new DecodeShard(new PduStore(shardPolicy, spillFile), decodeWorkers > 0 ? ringCapacity : 0, listeners, metrics);
+        }
+        try {
+            if (mode == ReceiveMode.CHANNEL) {
+                this.receiverThread = new ChannelReceiverThread(port);
+            } else {
+                this.receiverThread = new SocketReceiverThread(port);
+            }
+        } catch (IOException e) {
+            if (spillFile != null) {
+                spillFile.close();
+            }
+            throw e;
+        }
+        for (int i = 0; i < shardCount; i++) {
+            shards[i].start("DisDecoder-" + i);
+        }
         new Thread(receiverThread).start();
     }
 
     /**
-     * @return all the EntityStatePdu received yet
+     * @param entityKey an entity identifier packed with {@link EntityStateTable#key(int, int, int)}
+     * @return the shard decoding the pdus of this entity
      */
-    public List<EntityStatePdu> getReceivedEntityStatePdus() {
+    private DecodeShard shardOf(long entityKey) {
+        if (shards.length == 1 || entityKey == ReceivedPdu.NO_ENTITY) {
+            return shards[0];
+        }
+        long hash = entityKey * 0x9E3779B97F4A7C15L;
+        return shards[(int) ((hash >>> 32) % shards.length)];
+    }
+
+    /**
+     * Merge the pdus of one type kept by every shard, in reception order.
+     */
+    private <T extends Pdu> List<T> getPdus(PduType type, Class<T> pduClass) {
+        if (shards.length == 1) {
+            return shards[0].getPduStore().getPdus(type, pduClass);
+        }
+        List<ReceivedPdu> receivedPdus = getReceivedPdus(type);
+        List<T> pduList = new ArrayList<>(receivedPdus.size());
+        for (ReceivedPdu receivedPdu : receivedPdus) {
+            T pdu = pduClass.cast(receivedPdu.getPdu());
+            if (pdu != null) {
+                pduList.add(pdu);
+            }
+        }
+        return pduList;
+    }
+
+    /**
+     * @param type the pdu type to read
+     * @return the pdus of this type kept by every shard, in reception order, not decoded
+     */
+    public List<ReceivedPdu> getReceivedPdus(PduType type) {
+        if (shards.length == 1) {
+            return shards[0].getPduStore().getReceivedPdus(type);
+        }
+        List<List<ReceivedPdu>> shardPdus = new ArrayList<>(shards.length);
+        for (DecodeShard shard : shards) {
+            shardPdus.add(shard.getPduStore().getReceivedPdus(type));
+        }
+        return mergeBySequence(shardPdus);
+    }
 
-        List<EntityStatePdu> entityStatePduList= new ArrayList<>();
-        synchronized (receivedPdu) {
-            for (Pdu pdu : receivedPdu) {
-                if (pdu != null && pdu.getPduType() == PduType.ENTITY_STATE.value) {
-                    entityStatePduList.add((EntityStatePdu) pdu);
+    /**
+     * @param shardPdus the pdus of each shard, each list in reception order
+     * @return the pdus of every shard in reception order
+     */
+    private static List<ReceivedPdu> mergeBySequence(List<List<ReceivedPdu>> shardPdus) {
+        int total = 0;
+        for (List<ReceivedPdu> receivedPdus : shardPdus) {
+            total += receivedPdus.size();
+        }
+        int[] positions = new int[shardPdus.size()];
+        List<ReceivedPdu> mergedList = new ArrayList<>(total);
+        for (int n = 0; n < total; n++) {
+            int next = -1;
+            long nextSequence = Long.MAX_VALUE;
+            for (int i = 0; i < positions.length; i++) {
+                List<ReceivedPdu> receivedPdus = shardPdus.get(i);
+                if (positions[i] < receivedPdus.size() && receivedPdus.get(positions[i]).getSequence() < nextSequence) {
+                    nextSequence = receivedPdus.get(positions[i]).getSequence();
+                    next = i;
                 }
             }
+            mergedList.add(shardPdus.get(next).get(positions[next]++));
         }
-        return entityStatePduList;
+        return mergedList;
+    }
+
+    /**
+     * Every pdu below the returned cursor is either stored or lost, none is still being decoded.
+     * @return the cursor from which the pdus received from now on can be read
+     */
+    public long getCursor() {
+        long cursor = ingestedSequence;
+        for (DecodeShard shard : shards) {
+            cursor = Math.min(cursor, shard.getOldestPendingSequence());
+        }
+        return cursor;
+    }
+
+    /**
+     * Read the pdus of one type received since a cursor. Only the new pdus are
+     * visited, the older ones are skipped by binary search on their sequence number.
+     * @param cursor a cursor returned by {@link #getCursor()} or by a previous read, 0 to read from the beginning
+     * @param type the pdu type to read
+     * @return the pdus of this type stored since the cursor, in reception order, and the cursor of the next read
+     */
+    public PduBatch readSince(long cursor, PduType type) {
+        long end = getCursor();
+        if (cursor >= end) {
+            return new PduBatch(new ArrayList<>(), cursor);
+        }
+        List<List<ReceivedPdu>> shardPdus = new ArrayList<>(shards.length);
+        for (DecodeShard shard : shards) {
+            shardPdus.add(shard.getPduStore().getReceivedPdus(type, cursor, end));
+        }
+        List<ReceivedPdu> receivedPdus = shards.length == 1 ? shardPdus.get(0) : mergeBySequence(shardPdus);
+        List<Pdu> pduList = new ArrayList<>(receivedPdus.size());
+        for (ReceivedPdu receivedPdu : receivedPdus) {
+            Pdu pdu = receivedPdu.getPdu();
+            if (pdu != null) {
+                pduList.add(pdu);
+            }
+        }
+        return new PduBatch(pduList, end);
     }
 
     /**
      * @return all the EntityStatePdu received yet
      */
+    public List<EntityStatePdu> getReceivedEntityStatePdus() {
+        return getPdus(PduType.ENTITY_STATE, EntityStatePdu.class);
+    }
+
+    /**
+     * @return all the FirePdu received yet
+     */
     public List<FirePdu> getReceivedFirePdus() {
+        return getPdus(PduType.FIRE, FirePdu.class);
+    }
 
-        List<FirePdu> entityStatePduList= new ArrayList<>();
-        synchronized (receivedPdu) {
-            for (Pdu pdu : receivedPdu) {
-                if (pdu != null && pdu.getPduType() == PduType.FIRE.value) {
-                    entityStatePduList.add((FirePdu) pdu);
-                }
+    /**
+     * @return all the DetonationPdu received yet
+     */
+    public List<DetonationPdu> getReceivedDetonationPdus() {
+        return getPdus(PduType.DETONATION, DetonationPdu.class);
+    }
+
+    /**
+     * @param entityKey an entity identifier packed with {@link EntityStateTable#key(int, int, int)}
+     * @return the latest EntityStatePdu received for this entity, null if none was received
+     */
+    public EntityStatePdu getLatestEntityState(long entityKey) {
+        ReceivedPdu receivedPdu = shardOf(entityKey).getEntityStateTable().get(entityKey);
+        return receivedPdu != null ? (EntityStatePdu) receivedPdu.getPdu() : null;
+    }
+
+    /**
+     * @return the latest EntityStatePdu received for each entity
+     */
+    public List<EntityStatePdu> getLatestEntityStates() {
+        List<ReceivedPdu> receivedPdus = getLatestReceivedEntityStates();
+        List<EntityStatePdu> entityStatePduList = new ArrayList<>(receivedPdus.size());
+        for (ReceivedPdu receivedPdu : receivedPdus) {
+            EntityStatePdu pdu = (EntityStatePdu) receivedPdu.getPdu();
+            if (pdu != null) {
+                entityStatePduList.add(pdu);
             }
         }
         return entityStatePduList;
     }
 
-    public List<DetonationPdu> getReceivedDetonationPdus() {
-        List<DetonationPdu> pduList= new ArrayList<>();
+    /**
+     * @return the latest EntityStatePdu received for each entity, not decoded
+     */
+    public List<ReceivedPdu> getLatestReceivedEntityStates() {
+        List<ReceivedPdu> receivedPdus = new ArrayList<>();
+        for (DecodeShard shard : shards) {
+            receivedPdus.addAll(shard.getEntityStateTable().snapshot());
+        }
+        return receivedPdus;
+    }
 
-        synchronized (this.receivedPdu) {
-            for (Pdu pdu : receivedPdu) {
-                if (pdu != null && pdu.getPduType() == PduType.DETONATION.value) {
-                    pduList.add((DetonationPdu) pdu);
-                }
+    /**
+     * @param type the pdu type to read
+     * @return the pdus of this type evicted from memory by the retention policy, empty if there is no spill file
+     * @throws IOException if the spill file could not be read
+     */
+    public List<Pdu> getSpilledPdus(PduType type) throws IOException {
+        if (spillFile == null) {
+            return new ArrayList<>();
+        }
+        return spillFile.read(type);
+    }
+
+    /**
+     * @param listener notified of each pdu stored from now on
+     */
+    public void addListener(PduListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * @param listener a listener previously added
+     */
+    public void removeListener(PduListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Wait until enough pdus of one type match a predicate. The pdus already stored
+     * are considered, then each pdu is checked as soon as it is stored, without polling.
+     * @param type the pdu type to wait for
+     * @param pduClass the open-dis class matching this pdu type
+     * @param predicate condition on the pdus, null to accept every pdu of this type
+     * @param count number of pdus, or entities if keyed by entity, to wait for
+     * @param keyedByEntity true to count the pdus of the same entity once
+     * @param timeout maximum time to wait in milliseconds
+     * @param <T> the open-dis class matching this pdu type
+     * @return the matching pdus, fewer than count if the timeout elapsed
+     * @throws InterruptedException if the waiting thread is interrupted
+     */
+    public <T extends Pdu> List<T> await(PduType type, Class<T> pduClass, Predicate<? super T> predicate, int count,
+            boolean keyedByEntity, long timeout) throws InterruptedException {
+        PduWaiter<T> waiter = new PduWaiter<>(type, pduClass, predicate, count, keyedByEntity);
+        // register first so that no pdu stored during the scan is missed
+        addListener(waiter);
+        try {
+            for (ReceivedPdu receivedPdu : getReceivedPdus(type)) {
+                waiter.pduStored(receivedPdu);
             }
+            waiter.await(timeout);
+        } finally {
+            removeListener(waiter);
         }
-        return pduList;
+        return waiter.getMatches();
+    }
+
+    /**
+     * @return number of pdus dropped because the ring of a decode worker was full
+     */
+    public long getDroppedPduCount() {
+        long dropped = 0;
+        for (DecodeShard shard : shards) {
+            dropped += shard.getDroppedCount();
+        }
+        return dropped;
+    }
+
+    /**
+     * @return number of pdus waiting in the rings of the decode workers
+     */
+    public int getRingOccupancy() {
+        int occupancy = 0;
+        for (DecodeShard shard : shards) {
+            occupancy += shard.getRingOccupancy();
+        }
+        return occupancy;
+    }
+
+    /**
+     * @return total number of slots of the rings of the decode workers, 0 if the pdus are decoded inline
+     */
+    public int getRingCapacity() {
+        int capacity = 0;
+        for (DecodeShard shard : shards) {
+            capacity += shard.getRingCapacity();
+        }
+        return capacity;
     }
 
 //    /**
@@ -106,43 +423,99 @@ public class DisReceiver {
 //    }
 
     /**
-     * Remove all element in the list
+     * Remove all element in the list. Each store only switches to a new empty
+     * generation, so this does not depend on the number of pdus received; the
+     * sequence numbers keep increasing, so cursors taken before stay valid.
      */
     public void clearList() {
-        synchronized (receivedPdu) {
-            receivedPdu.clear();
+        for (DecodeShard shard : shards) {
+            shard.getPduStore().clear();
+            shard.getEntityStateTable().clear();
+        }
+        if (spillFile != null) {
+            spillFile.clear();
         }
     }
     
     public void terminate() {
         this.receiverThread.interrupt();
+        for (DecodeShard shard : shards) {
+            shard.stop();
+        }
+        if (spillFile != null) {
+            spillFile.close();
+        }
     }
 
 
 
-    private class ReceiverThread implements Runnable {
+    private abstract class ReceiverThread implements Runnable {
+
+        protected volatile boolean interrupted = false;
+
+        /**
+         * Reception sequence number of the next PDU
+         */
+        private long nextSequence = 0;
+
+        /**
+         * Split a datagram on the length field of each PDU header and hand a copy
+         * of every PDU to the shard of its entity. Only the header is read here.
+         * @param datagram the received datagram, between position and limit
+         */
+        protected void ingest(ByteBuffer datagram) {
+            long receiveTime = System.currentTimeMillis();
+            long receiveNano = 0;
+            int offset = datagram.position();
+            int limit = datagram.limit();
+            if (metrics != null) {
+                receiveNano = System.nanoTime();
+                metrics.datagramReceived(limit - offset);
+            }
+            while (limit - offset >= PDU_HEADER_SIZE) {
+                int length = datagram.getShort(offset + PDU_LENGTH_OFFSET) & 0xFFFF;
+                if (length < PDU_HEADER_SIZE || length > limit - offset) {
+                    break;
+                }
+                byte[] data = new byte[length];
+                ByteBuffer source = datagram.duplicate();
+                source.position(offset);
+                source.get(data);
+                if (metrics != null) {
+                    metrics.pduReceived(data[2] & 0xFF);
+                }
+                shardOf(ReceivedPdu.readEntityKey(data)).publish(data, receiveTime, receiveNano, nextSequence++);
+                offset += length;
+            }
+            ingestedSequence = nextSequence;
+            if (metrics != null && offset < limit) {
+                metrics.malformedDatagram();
+            }
+        }
+
+        public abstract void interrupt();
+    }
+
+    /**
+     * Receive datagrams through a blocking DatagramSocket. The receive buffer is
+     * reused since every PDU is copied out of it.
+     */
+    private class SocketReceiverThread extends ReceiverThread {
 
-        private boolean interrupted = false;
         private DatagramSocket socket = null;
-        private PduFactory pduFactory = new PduFactory();
 
-        public ReceiverThread(int port) throws SocketException {
+        public SocketReceiverThread(int port) throws SocketException {
             socket = new DatagramSocket(port);
         }
 
         public void run() {
-            DatagramPacket packet;
+            byte[] buffer = new byte[MAX_PDU_SIZE];
+            DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
             try {
                 while (!interrupted) {
-                    byte[] buffer = new byte[MAX_PDU_SIZE];
-                    packet = new DatagramPacket(buffer, buffer.length);
-
+                    packet.setLength(buffer.length);
                     socket.receive(packet);
-                    List<Pdu> pduBundle = pduFactory.getPdusFromBundle(packet.getData());
-
-                    synchronized (receivedPdu) {
-                        receivedPdu.addAll(pduBundle);
-                    }
+                    ingest(ByteBuffer.wrap(buffer, 0, packet.getLength()));
                 }
             } catch (IOException e) {
                 this.interrupt();
@@ -155,4 +528,46 @@ public class DisReceiver {
         }
     }
 
+    /**
+     * Receive datagrams through a DatagramChannel into a single direct buffer.
+     * The buffer is reused since every PDU is copied out of it.
+     */
+    private class ChannelReceiverThread extends ReceiverThread {
+
+        private final DatagramChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(MAX_PDU_SIZE);
+
+        public ChannelReceiverThread(int port) throws IOException {
+            this.channel = DatagramChannel.open();
+            try {
+                channel.bind(new InetSocketAddress(port));
+            } catch (IOException e) {
+                channel.close();
+                throw e;
+            }
+        }
+
+        public void run() {
+            try {
+                while (!interrupted) {
+                    buffer.clear();
+                    channel.receive(buffer);
+                    buffer.flip();
+                    ingest(buffer);
+                }
+            } catch (IOException e) {
+                this.interrupt();
+            }
+        }
+
+        public void interrupt() {
+            interrupted = true;
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // nothing more to do, the receiver is stopping
+            }
+        }
+    }
+
 }
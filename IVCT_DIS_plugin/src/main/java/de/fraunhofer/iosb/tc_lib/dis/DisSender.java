@@ -17,43 +17,143 @@
 package de.fraunhofer.iosb.tc_lib.dis;
 
 import java.io.IOException;
-import java.net.DatagramPacket;
-import java.net.DatagramSocket;
-import java.net.InetAddress;
-import java.net.SocketException;
+import java.net.InetSocketAddress;
 import java.net.UnknownHostException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
+import ca.drdc.ivct.fom.base.BaseEntity;
+import ca.drdc.ivct.fom.warfare.MunitionDetonation;
+import ca.drdc.ivct.fom.warfare.WeaponFire;
+import de.fraunhofer.iosb.tc_lib.converter.DisWireEncoder;
 import edu.nps.moves.dis.Pdu;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import edu.nps.moves.dis.EntityStatePdu;
-
 /**
  * Send EntityStatePdu to the specified broadcasting address and port
+ * <p>
+ * Each sending thread marshals into its own reusable direct buffer, which the
+ * DatagramChannel sends without copy, so sending a pdu does not allocate once
+ * the buffer of the thread exists. GrimRPR objects can also be encoded straight
+ * into that buffer by {@link DisWireEncoder}, skipping the open-dis objects.
+ * <p>
+ * A pdu is marshalled once whatever the number of {@link SendDestination}, the
+ * same buffer is then sent to each destination through its own channel.
+ * <p>
+ * With a {@link BundlingPolicy} the marshalled pdus are appended to a shared
+ * bundle instead, which is sent as one datagram when full or too old.
  */
 public class DisSender {
     
     private static Logger logger = LoggerFactory.getLogger(DisSender.class);
+
+    /**
+     * One pdu out of this many is logged at INFO level
+     */
+    private static final int LOG_SAMPLE_INTERVAL = 1000;
+
+    private static final ThreadLocal<ByteBuffer> SEND_BUFFER =
+            ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(DisReceiver.MAX_PDU_SIZE));
  
-    private DatagramSocket socket = null;
+    private final SendDestination[] destinations;
+
+    private final AtomicLong sentCount = new AtomicLong();
+
+    private final AtomicLong datagramCount = new AtomicLong();
 
-    private InetAddress bcastAddress;
+    private final BundlingPolicy bundlingPolicy;
 
-    private int sPort;
+    /**
+     * Pdus waiting to be sent together, null if bundling is disabled. Guarded by itself.
+     */
+    private final ByteBuffer bundle;
+
+    private int bundledPduCount = 0;
+
+    private long bundleStartNanos = 0;
+
+    /**
+     * Flushes the bundles reaching the maximum latency, null if there is no latency bound
+     */
+    private final ScheduledExecutorService flushTimer;
+
+    private final long flushPeriodNanos;
 
     /** The multicast address we plan to send on, and the port, in string format 
      * @param bcast hostname or textual representation of a hostname of the host to send to
      * @param sPort the port to send to
      * @throws UnknownHostException if the broadcast host is malformed
-     * @throws SocketException if the socket could not be opened, or the socket could not bind to the specified local port.
+     * @throws IOException if the channel could not be opened
      */
-    public DisSender(String bcast, int sPort) throws UnknownHostException, SocketException {
-        
-        this.sPort = sPort;
-        this.bcastAddress = InetAddress.getByName(bcast);
-        socket = new DatagramSocket();
+    public DisSender(String bcast, int sPort) throws IOException {
+        this(bcast, sPort, BundlingPolicy.DISABLED);
+    }
 
+    /**
+     * @param param the test case parameters holding the SUT address and the bundling policy
+     * @throws IOException if the SUT host is malformed or the channel could not be opened
+     */
+    public DisSender(DisTcParam param) throws IOException {
+        this(param.getDestinations(), param.getBundlingPolicy());
+    }
+
+    /**
+     * @param bcast hostname or textual representation of a hostname of the host to send to
+     * @param sPort the port to send to
+     * @param bundlingPolicy how pdus are packed in datagrams
+     * @throws IOException if the host is malformed or the channel could not be opened
+     */
+    public DisSender(String bcast, int sPort, BundlingPolicy bundlingPolicy) throws IOException {
+        this(Collections.singletonList(InetSocketAddress.createUnresolved(bcast, sPort)), bundlingPolicy);
+    }
+
+    /**
+     * @param destinations the unicast, broadcast or multicast addresses to send to, not resolved yet
+     * @param bundlingPolicy how pdus are packed in datagrams
+     * @throws IOException if a host is malformed or a channel could not be opened
+     */
+    public DisSender(List<InetSocketAddress> destinations, BundlingPolicy bundlingPolicy) throws IOException {
+        if (destinations.isEmpty()) {
+            throw new IllegalArgumentException("At least one destination is required");
+        }
+        this.destinations = new SendDestination[destinations.size()];
+        try {
+            for (int i = 0; i < destinations.size(); i++) {
+                this.destinations[i] = new SendDestination(destinations.get(i).getHostString(), destinations.get(i).getPort());
+            }
+        } catch (IOException e) {
+            closeDestinations();
+            throw e;
+        }
+        this.bundlingPolicy = bundlingPolicy;
+
+        if (bundlingPolicy.isEnabled()) {
+            this.bundle = ByteBuffer.allocateDirect(Math.min(bundlingPolicy.getMaxBytes(), DisReceiver.MAX_PDU_SIZE));
+        } else {
+            this.bundle = null;
+        }
+        if (bundlingPolicy.isEnabled() && bundlingPolicy.getMaxLatencyMillis() > 0) {
+            // check a few times per latency bound so that no bundle waits longer than the bound
+            this.flushPeriodNanos = Math.max(TimeUnit.MILLISECONDS.toNanos(1),
+                    TimeUnit.MILLISECONDS.toNanos(bundlingPolicy.getMaxLatencyMillis()) / 4);
+            this.flushTimer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "DisBundleFlush");
+                thread.setDaemon(true);
+                return thread;
+            });
+            flushTimer.scheduleAtFixedRate(this::flushExpired, flushPeriodNanos, flushPeriodNanos, TimeUnit.NANOSECONDS);
+        } else {
+            this.flushPeriodNanos = 0;
+            this.flushTimer = null;
+        }
     }
 
     /**
@@ -62,24 +162,219 @@ public class DisSender {
      */
     public void sendPdu(Pdu pdu) {
 
-        logger.info("Sending pdu "+pdu);
-        // The marshalling process here will update the timestamp. 
-        //marshall according to the IEEE 1278.1 DIS formatted byte array
-        byte[] data = pdu.marshalWithDisAbsoluteTimestamp();
-
-        // Stuff that byte array into a UDP packet and send it
-        DatagramPacket packet = new DatagramPacket(data, data.length, bcastAddress, sPort);
+        // parameterized so that the pdu is only formatted if debug is enabled
+        logger.debug("Sending pdu {}", pdu);
+        ByteBuffer buffer = SEND_BUFFER.get();
+        buffer.clear();
         try {
-            socket.send(packet);
-        } catch (IOException e) {
+            // The marshalling process here will update the timestamp. 
+            //marshall according to the IEEE 1278.1 DIS formatted byte array
+            pdu.marshalWithDisAbsoluteTimestamp(buffer);
+            buffer.flip();
+            if (bundle != null) {
+                addToBundle(buffer);
+            } else {
+                sendDatagram(buffer);
+            }
+        } catch (BufferOverflowException e) {
             logger.error("Error while sending pdu type :{}", pdu.getPduTypeEnum(), e);
+            return;
+        }
+        long count = sentCount.incrementAndGet();
+        if (count % LOG_SAMPLE_INTERVAL == 1 && logger.isInfoEnabled()) {
+            logger.info("Sent {} pdus, last one :{}", count, pdu);
+        }
+    }
+
+    /**
+     * Send a pdu template with the current timestamp, without marshalling it again
+     * @param template the pdu template, patched by the calling thread only
+     */
+    public void sendTemplate(EntityStateTemplate template) {
+        ByteBuffer buffer = SEND_BUFFER.get();
+        buffer.clear();
+        try {
+            template.stampNow();
+            template.writeTo(buffer);
+            buffer.flip();
+            if (bundle != null) {
+                addToBundle(buffer);
+            } else {
+                sendDatagram(buffer);
+            }
+        } catch (BufferOverflowException e) {
+            logger.error("Error while sending an entity state template", e);
+            return;
         }
+        sentCount.incrementAndGet();
+    }
+
+    /**
+     * Send an entity encoded straight into the send buffer, without open-dis objects
+     * @param entity the entity to send as an EntityStatePdu
+     */
+    public void sendEntity(BaseEntity entity) {
+        ByteBuffer buffer = SEND_BUFFER.get();
+        buffer.clear();
+        DisWireEncoder.encodeEntityState(entity, EntityStateTemplate.absoluteTimestamp(System.currentTimeMillis()), buffer);
+        sendEncoded(buffer);
+    }
+
+    /**
+     * Send a weapon fire encoded straight into the send buffer, without open-dis objects
+     * @param weaponFire the weapon fire to send as a FirePdu
+     * @throws IllegalArgumentException if an object or event identifier is not numeric
+     */
+    public void sendWeaponFire(WeaponFire weaponFire) {
+        ByteBuffer buffer = SEND_BUFFER.get();
+        buffer.clear();
+        DisWireEncoder.encodeFire(weaponFire, EntityStateTemplate.absoluteTimestamp(System.currentTimeMillis()), buffer);
+        sendEncoded(buffer);
+    }
+
+    /**
+     * Send a munition detonation encoded straight into the send buffer, without open-dis objects
+     * @param munitionDetonation the munition detonation to send as a DetonationPdu
+     * @throws IllegalArgumentException if an object or event identifier is not numeric
+     */
+    public void sendMunitionDetonation(MunitionDetonation munitionDetonation) {
+        ByteBuffer buffer = SEND_BUFFER.get();
+        buffer.clear();
+        try {
+            DisWireEncoder.encodeDetonation(munitionDetonation,
+                    EntityStateTemplate.absoluteTimestamp(System.currentTimeMillis()), buffer);
+        } catch (BufferOverflowException e) {
+            logger.error("Error while sending a munition detonation with {} articulated parts",
+                    munitionDetonation.getArticulatedPartData().length, e);
+            return;
+        }
+        sendEncoded(buffer);
+    }
+
+    private void sendEncoded(ByteBuffer buffer) {
+        buffer.flip();
+        if (bundle != null) {
+            addToBundle(buffer);
+        } else {
+            sendDatagram(buffer);
+        }
+        sentCount.incrementAndGet();
+    }
+
+    /**
+     * Append a marshalled pdu to the bundle, sending the bundle first if the pdu
+     * does not fit, and after if it is full.
+     */
+    private void addToBundle(ByteBuffer pdu) {
+        synchronized (bundle) {
+            if (pdu.remaining() > bundle.remaining()) {
+                sendBundle();
+                if (pdu.remaining() > bundle.capacity()) {
+                    // larger than a bundle, goes alone
+                    sendDatagram(pdu);
+                    return;
+                }
+            }
+            if (bundledPduCount == 0) {
+                bundleStartNanos = System.nanoTime();
+            }
+            bundle.put(pdu);
+            bundledPduCount++;
+            if (!bundle.hasRemaining()
+                    || (bundlingPolicy.getMaxPdus() > 0 && bundledPduCount >= bundlingPolicy.getMaxPdus())) {
+                sendBundle();
+            }
+        }
+    }
+
+    /**
+     * Send the bundle if not empty. Must be called while holding the bundle lock.
+     */
+    private void sendBundle() {
+        if (bundledPduCount == 0) {
+            return;
+        }
+        bundle.flip();
+        try {
+            sendDatagram(bundle);
+        } finally {
+            bundle.clear();
+            bundledPduCount = 0;
+        }
+    }
+
+    private void flushExpired() {
+        synchronized (bundle) {
+            long maxLatencyNanos = TimeUnit.MILLISECONDS.toNanos(bundlingPolicy.getMaxLatencyMillis());
+            if (bundledPduCount > 0 && System.nanoTime() - bundleStartNanos >= maxLatencyNanos - flushPeriodNanos) {
+                sendBundle();
+            }
+        }
+    }
+
+    /**
+     * Send the same datagram to every destination, a failing destination does not stop the others
+     */
+    private void sendDatagram(ByteBuffer datagram) {
+        for (SendDestination destination : destinations) {
+            destination.send(datagram);
+        }
+        datagramCount.incrementAndGet();
+    }
+
+    /**
+     * Send the pdus waiting in the bundle now, does nothing if bundling is disabled
+     */
+    public void flush() {
+        if (bundle == null) {
+            return;
+        }
+        synchronized (bundle) {
+            sendBundle();
+        }
+    }
+
+    /**
+     * @return number of pdus sent
+     */
+    public long getSentCount() {
+        return sentCount.get();
+    }
+
+    /**
+     * @return number of datagrams sent to each destination, lower than the number of pdus when bundling
+     */
+    public long getDatagramCount() {
+        return datagramCount.get();
+    }
+
+    public BundlingPolicy getBundlingPolicy() {
+        return bundlingPolicy;
+    }
+
+    /**
+     * @return the destinations with their own counters, in configuration order
+     */
+    public List<SendDestination> getDestinations() {
+        return Collections.unmodifiableList(Arrays.asList(destinations));
     }
     
     /**
-     * Terminate the connection 
+     * Terminate the connection, after sending the pdus waiting in the bundle
      */
     public void terminate() {
-        this.socket.close();
+        if (flushTimer != null) {
+            flushTimer.shutdownNow();
+        }
+        flush();
+        closeDestinations();
+    }
+
+    private void closeDestinations() {
+        for (SendDestination destination : destinations) {
+            if (destination != null) {
+                destination.close();
+            }
+        }
     }
 }
@@ -17,11 +17,13 @@
 package de.fraunhofer.iosb.tc_lib.dis;
 
 import java.io.File;
+import java.net.InetSocketAddress;
 import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
@@ -42,6 +44,21 @@ public class DisTcParam {
     private Integer waitingPeriod;
     private List<URL> fadUrls;
     private Map<String, Double> spatialValueThreshold;
+    private DisReceiver.ReceiveMode receiveMode = DisReceiver.ReceiveMode.SOCKET;
+    private RetentionPolicy retentionPolicy = RetentionPolicy.UNLIMITED;
+    private int decodeWorkers = 0;
+    private int ringCapacity = DisReceiver.DEFAULT_RING_CAPACITY;
+    private boolean metricsEnabled = false;
+    private BundlingPolicy bundlingPolicy = BundlingPolicy.DISABLED;
+    private boolean deadReckoningEnabled = false;
+    private double deadReckoningPositionThreshold = DeadReckoningFilter.DEFAULT_POSITION_THRESHOLD;
+    private double deadReckoningOrientationThreshold = DeadReckoningFilter.DEFAULT_ORIENTATION_THRESHOLD;
+    private long deadReckoningHeartbeatMillis = DeadReckoningFilter.DEFAULT_HEARTBEAT_MILLIS;
+    private int sendQueueCapacity = 0;
+    private SendPipeline.BackpressurePolicy backpressurePolicy = SendPipeline.BackpressurePolicy.BLOCK;
+    private List<InetSocketAddress> destinations;
+    private LoadProfile loadProfile = null;
+    private CapacityProfile capacityProfile = null;
     
     public DisTcParam(String tcParamJsonString) throws TcInconclusive {
         JSONParser jsonParser = new JSONParser();
@@ -87,6 +104,161 @@ public class DisTcParam {
                     spatialValueThreshold.put(key, (Double) thresholds.get(key));
                 }
             }
+
+            // optional receive settings, the blocking socket stays the default
+            String receiveModeValue = (String) jsonObject.get("receiveMode");
+            if (receiveModeValue != null) {
+                try {
+                    receiveMode = DisReceiver.ReceiveMode.valueOf(receiveModeValue.toUpperCase());
+                } catch (IllegalArgumentException e) {
+                    throw new TcInconclusive("Invalid receiveMode '" + receiveModeValue + "', expected one of " + Arrays.toString(DisReceiver.ReceiveMode.values()), e);
+                }
+            }
+
+            // optional bounds on the pdus kept in memory by the receiver
+            JSONObject retention = (JSONObject) jsonObject.get("retention");
+            if (retention != null) {
+                String spillFileName = (String) retention.get("spillFile");
+                retentionPolicy = new RetentionPolicy(
+                        getOptionalLong(retention, "maxCount"),
+                        getOptionalLong(retention, "maxBytes"),
+                        getOptionalLong(retention, "maxAgeMs"),
+                        spillFileName != null ? new File(spillFileName) : null);
+            }
+
+            // optional decode workers, the pdus are decoded on the receiver thread by default
+            Object decodeWorkersValue = jsonObject.get("decodeWorkers");
+            if (decodeWorkersValue != null) {
+                decodeWorkers = Integer.parseInt(String.valueOf(decodeWorkersValue));
+                if (decodeWorkers < 0) {
+                    throw new TcInconclusive("Invalid decodeWorkers " + decodeWorkers + ", expected 0 or more");
+                }
+            }
+            Object ringCapacityValue = jsonObject.get("ringCapacity");
+            if (ringCapacityValue != null) {
+                ringCapacity = Integer.parseInt(String.valueOf(ringCapacityValue));
+                if (ringCapacity <= 0) {
+                    throw new TcInconclusive("Invalid ringCapacity " + ringCapacity + ", expected at least 1");
+                }
+            }
+
+            // optional bundling of the sent pdus, one pdu per datagram by default
+            JSONObject bundling = (JSONObject) jsonObject.get("bundling");
+            if (bundling != null) {
+                long maxBytes = getOptionalLong(bundling, "maxBytes");
+                Object maxLatencyValue = bundling.get("maxLatencyMs");
+                bundlingPolicy = new BundlingPolicy(
+                        maxBytes > 0 ? (int) maxBytes : BundlingPolicy.DEFAULT_MAX_BYTES,
+                        (int) getOptionalLong(bundling, "maxPdus"),
+                        maxLatencyValue != null ? Long.parseLong(String.valueOf(maxLatencyValue)) : BundlingPolicy.DEFAULT_MAX_LATENCY_MILLIS);
+            }
+
+            // optional dead reckoning send suppression, every EntityStatePdu is sent by default
+            JSONObject deadReckoning = (JSONObject) jsonObject.get("deadReckoning");
+            if (deadReckoning != null) {
+                Object positionThreshold = deadReckoning.get("positionThreshold");
+                Object orientationThreshold = deadReckoning.get("orientationThreshold");
+                Object heartbeat = deadReckoning.get("heartbeatMs");
+                deadReckoningEnabled = true;
+                if (positionThreshold != null) {
+                    deadReckoningPositionThreshold = Double.parseDouble(String.valueOf(positionThreshold));
+                }
+                if (orientationThreshold != null) {
+                    deadReckoningOrientationThreshold = Math.toRadians(Double.parseDouble(String.valueOf(orientationThreshold)));
+                }
+                if (heartbeat != null) {
+                    deadReckoningHeartbeatMillis = Long.parseLong(String.valueOf(heartbeat));
+                }
+            }
+
+            // optional asynchronous send queue, the pdus are sent on the caller thread by default
+            JSONObject sendQueue = (JSONObject) jsonObject.get("sendQueue");
+            if (sendQueue != null) {
+                long capacity = getOptionalLong(sendQueue, "capacity");
+                sendQueueCapacity = capacity > 0 ? (int) capacity : SendPipeline.DEFAULT_CAPACITY;
+                String backpressureValue = (String) sendQueue.get("backpressure");
+                if (backpressureValue != null) {
+                    try {
+                        backpressurePolicy = SendPipeline.BackpressurePolicy.valueOf(backpressureValue.toUpperCase());
+                    } catch (IllegalArgumentException e) {
+                        throw new TcInconclusive("Invalid backpressure '" + backpressureValue + "', expected one of " + Arrays.toString(SendPipeline.BackpressurePolicy.values()), e);
+                    }
+                }
+            }
+
+            // optional list of destinations of the sent pdus, the SUT only by default
+            JSONArray destinationArray = (JSONArray) jsonObject.get("destinations");
+            if (destinationArray != null) {
+                destinations = new ArrayList<>();
+                for (Object destinationValue : destinationArray) {
+                    JSONObject destination = (JSONObject) destinationValue;
+                    String host = (String) destination.get("host");
+                    Object port = destination.get("port");
+                    if (host == null || port == null) {
+                        throw new TcInconclusive("Each destination requires a 'host' and a 'port'");
+                    }
+                    destinations.add(InetSocketAddress.createUnresolved(host, Integer.parseInt(String.valueOf(port))));
+                }
+                if (destinations.isEmpty()) {
+                    throw new TcInconclusive("The key 'destinations' requires at least one destination");
+                }
+            }
+
+            // optional synthetic load generated from the FAD entities
+            JSONObject load = (JSONObject) jsonObject.get("load");
+            if (load != null) {
+                Object rate = load.get("rate");
+                if (rate == null) {
+                    throw new TcInconclusive("The key 'rate' was not found in the load configuration");
+                }
+                long entities = getOptionalLong(load, "entities");
+                Object durationValue = load.get("durationMs");
+                Object jitterValue = load.get("jitter");
+                try {
+                    loadProfile = new LoadProfile(
+                            entities > 0 ? (int) entities : LoadProfile.DEFAULT_ENTITY_COUNT,
+                            load.get("startRate") != null ? Double.parseDouble(String.valueOf(load.get("startRate"))) : 0,
+                            Double.parseDouble(String.valueOf(rate)),
+                            getOptionalLong(load, "rampMs"),
+                            durationValue != null ? Long.parseLong(String.valueOf(durationValue)) : LoadProfile.DEFAULT_DURATION_MILLIS,
+                            jitterValue != null ? Double.parseDouble(String.valueOf(jitterValue)) : LoadProfile.DEFAULT_POSITION_JITTER);
+                } catch (IllegalArgumentException e) {
+                    throw new TcInconclusive("Invalid load configuration : " + e.getMessage(), e);
+                }
+            }
+
+            // optional search of the SUT capacity
+            JSONObject capacity = (JSONObject) jsonObject.get("capacity");
+            if (capacity != null) {
+                long startEntities = getOptionalLong(capacity, "startEntities");
+                long stepEntities = getOptionalLong(capacity, "stepEntities");
+                long maxEntities = getOptionalLong(capacity, "maxEntities");
+                if (maxEntities <= 0) {
+                    throw new TcInconclusive("The key 'maxEntities' was not found in the capacity configuration");
+                }
+                Object rateValue = capacity.get("rateHz");
+                Object stepValue = capacity.get("stepMs");
+                Object maxLossValue = capacity.get("maxLoss");
+                Object maxLatencyValue = capacity.get("maxLatencyMs");
+                try {
+                    capacityProfile = new CapacityProfile(
+                            startEntities > 0 ? (int) startEntities : (int) Math.max(1, maxEntities / 10),
+                            stepEntities > 0 ? (int) stepEntities : (int) Math.max(1, maxEntities / 10),
+                            (int) maxEntities,
+                            rateValue != null ? Double.parseDouble(String.valueOf(rateValue)) : CapacityProfile.DEFAULT_ENTITY_RATE,
+                            stepValue != null ? Long.parseLong(String.valueOf(stepValue)) : CapacityProfile.DEFAULT_STEP_MILLIS,
+                            maxLossValue != null ? Double.parseDouble(String.valueOf(maxLossValue)) : CapacityProfile.DEFAULT_MAX_LOSS,
+                            maxLatencyValue != null ? Long.parseLong(String.valueOf(maxLatencyValue)) : CapacityProfile.DEFAULT_MAX_LATENCY_MILLIS);
+                } catch (IllegalArgumentException e) {
+                    throw new TcInconclusive("Invalid capacity configuration : " + e.getMessage(), e);
+                }
+            }
+
+            // optional receive metrics, disabled by default
+            Object metricsValue = jsonObject.get("metrics");
+            if (metricsValue != null) {
+                metricsEnabled = Boolean.parseBoolean(String.valueOf(metricsValue));
+            }
         } catch (ParseException | NumberFormatException e) {
             throw new TcInconclusive("Invalid configuration file", e);
         }
@@ -116,6 +288,16 @@ public class DisTcParam {
         this.listeningPort = listeningPort;
     }
     
+    /**
+     * @param jsonObject the object holding the key
+     * @param key the key of an optional numeric value
+     * @return the value, 0 if the key is absent
+     */
+    private static long getOptionalLong(JSONObject jsonObject, String key) {
+        Object value = jsonObject.get(key);
+        return value != null ? Long.parseLong(String.valueOf(value)) : 0;
+    }
+
     public List<URL> jsonArrayToUrlList(JSONArray jsonArray) throws TcInconclusive {
         List<URL> urls = new ArrayList<>();
         Iterator<?> iter = jsonArray.iterator();
@@ -152,4 +334,156 @@ public class DisTcParam {
     public void setWaitingPeriod(Integer waitingPeriod) {
         this.waitingPeriod = waitingPeriod;
     }
+
+    public DisReceiver.ReceiveMode getReceiveMode() {
+        return receiveMode;
+    }
+
+    public void setReceiveMode(DisReceiver.ReceiveMode receiveMode) {
+        this.receiveMode = receiveMode;
+    }
+
+    public RetentionPolicy getRetentionPolicy() {
+        return retentionPolicy;
+    }
+
+    public void setRetentionPolicy(RetentionPolicy retentionPolicy) {
+        this.retentionPolicy = retentionPolicy;
+    }
+
+    public int getDecodeWorkers() {
+        return decodeWorkers;
+    }
+
+    public void setDecodeWorkers(int decodeWorkers) {
+        this.decodeWorkers = decodeWorkers;
+    }
+
+    public int getRingCapacity() {
+        return ringCapacity;
+    }
+
+    public void setRingCapacity(int ringCapacity) {
+        this.ringCapacity = ringCapacity;
+    }
+
+    public boolean isMetricsEnabled() {
+        return metricsEnabled;
+    }
+
+    public void setMetricsEnabled(boolean metricsEnabled) {
+        this.metricsEnabled = metricsEnabled;
+    }
+
+    public BundlingPolicy getBundlingPolicy() {
+        return bundlingPolicy;
+    }
+
+    public void setBundlingPolicy(BundlingPolicy bundlingPolicy) {
+        this.bundlingPolicy = bundlingPolicy;
+    }
+
+    /**
+     * @return true if each DisManager suppresses the EntityStatePdu close to their dead reckoned state
+     */
+    public boolean isDeadReckoningEnabled() {
+        return deadReckoningEnabled;
+    }
+
+    public void setDeadReckoningEnabled(boolean deadReckoningEnabled) {
+        this.deadReckoningEnabled = deadReckoningEnabled;
+    }
+
+    /**
+     * @return maximum dead reckoned position error in meters
+     */
+    public double getDeadReckoningPositionThreshold() {
+        return deadReckoningPositionThreshold;
+    }
+
+    public void setDeadReckoningPositionThreshold(double deadReckoningPositionThreshold) {
+        this.deadReckoningPositionThreshold = deadReckoningPositionThreshold;
+    }
+
+    /**
+     * @return maximum dead reckoned error on any Euler angle in radians
+     */
+    public double getDeadReckoningOrientationThreshold() {
+        return deadReckoningOrientationThreshold;
+    }
+
+    public void setDeadReckoningOrientationThreshold(double deadReckoningOrientationThreshold) {
+        this.deadReckoningOrientationThreshold = deadReckoningOrientationThreshold;
+    }
+
+    /**
+     * @return maximum time between two publications of an entity in milliseconds
+     */
+    public long getDeadReckoningHeartbeatMillis() {
+        return deadReckoningHeartbeatMillis;
+    }
+
+    public void setDeadReckoningHeartbeatMillis(long deadReckoningHeartbeatMillis) {
+        this.deadReckoningHeartbeatMillis = deadReckoningHeartbeatMillis;
+    }
+
+    /**
+     * @return maximum number of pdus waiting in the asynchronous send queue, 0 if the pdus are sent on the caller thread
+     */
+    public int getSendQueueCapacity() {
+        return sendQueueCapacity;
+    }
+
+    public void setSendQueueCapacity(int sendQueueCapacity) {
+        this.sendQueueCapacity = sendQueueCapacity;
+    }
+
+    public SendPipeline.BackpressurePolicy getBackpressurePolicy() {
+        return backpressurePolicy;
+    }
+
+    public void setBackpressurePolicy(SendPipeline.BackpressurePolicy backpressurePolicy) {
+        this.backpressurePolicy = backpressurePolicy;
+    }
+
+    /**
+     * @return the addresses the pdus are sent to, not resolved yet; the current SUT address
+     * when no destination was configured
+     */
+    public List<InetSocketAddress> getDestinations() {
+        if (destinations == null) {
+            // built on each call so that a SUT changed through the setters is followed
+            return Collections.singletonList(InetSocketAddress.createUnresolved(sutHostName, sutPort));
+        }
+        return destinations;
+    }
+
+    /**
+     * @param destinations the addresses the pdus are sent to, null to send to the SUT only
+     */
+    public void setDestinations(List<InetSocketAddress> destinations) {
+        this.destinations = destinations;
+    }
+
+    /**
+     * @return the synthetic load to generate, null if not configured
+     */
+    public LoadProfile getLoadProfile() {
+        return loadProfile;
+    }
+
+    public void setLoadProfile(LoadProfile loadProfile) {
+        this.loadProfile = loadProfile;
+    }
+
+    /**
+     * @return the capacity search to run, null if not configured
+     */
+    public CapacityProfile getCapacityProfile() {
+        return capacityProfile;
+    }
+
+    public void setCapacityProfile(CapacityProfile capacityProfile) {
+        this.capacityProfile = capacityProfile;
+    }
 }
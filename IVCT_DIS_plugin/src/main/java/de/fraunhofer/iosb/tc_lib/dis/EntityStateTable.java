@@ -0,0 +1,196 @@
+/*******************************************************************************
+ * Copyright (C) Her Majesty the Queen in Right of Canada, 
+ * as represented by the Minister of National Defence, 2018
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package de.fraunhofer.iosb.tc_lib.dis;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import edu.nps.moves.dis.EntityID;
+
+/**
+ * Latest EntityStatePdu received for each entity, kept undecoded as a {@link ReceivedPdu}.
+ * <p>
+ * Entities are keyed by a long packing the site, application and entity
+ * numbers, see {@link #key(int, int, int)}. The table uses open addressing
+ * over primitive arrays so a lookup neither boxes the key nor walks a chain,
+ * and its size follows the entity population instead of the update count.
+ * <p>
+ * The table is updated by a single writer (the receiver thread) and read
+ * without lock. An entry is published by writing its value before its key,
+ * readers read the key before the value.
+ */
+public class EntityStateTable {
+
+    private static final long EMPTY_KEY = -1L;
+    private static final int INITIAL_CAPACITY = 256;
+
+    private final AtomicReference<Table> table = new AtomicReference<>(new Table(INITIAL_CAPACITY));
+
+    /**
+     * Pack a DIS entity identifier in a long. Each number is an unsigned 16 bits value.
+     * @param site the site number
+     * @param application the application number
+     * @param entity the entity number
+     * @return the packed identifier, never negative
+     */
+    public static long key(int site, int application, int entity) {
+        return ((long) (site & 0xFFFF) << 32) | ((long) (application & 0xFFFF) << 16) | (entity & 0xFFFF);
+    }
+
+    /**
+     * @param entityID a DIS entity identifier
+     * @return the packed identifier
+     */
+    public static long key(EntityID entityID) {
+        return key(entityID.getSite(), entityID.getApplication(), entityID.getEntity());
+    }
+
+    /**
+     * Record the state of an entity, replacing its previous state. Must only be called by the writer thread.
+     * @param pdu the last received EntityStatePdu of the entity
+     */
+    public void put(ReceivedPdu pdu) {
+        long key = pdu.getEntityKey();
+        if (key == ReceivedPdu.NO_ENTITY) {
+            return;
+        }
+        Table current = table.get();
+        if (!current.put(key, pdu)) {
+            Table grown = current.grow();
+            grown.put(key, pdu);
+            // a concurrent clear wins over the resize
+            table.compareAndSet(current, grown);
+        }
+    }
+
+    /**
+     * @param key a packed entity identifier
+     * @return the latest state of this entity, null if it was never received
+     */
+    public ReceivedPdu get(long key) {
+        return table.get().get(key);
+    }
+
+    /**
+     * @return the latest state of every entity, in no particular order
+     */
+    public List<ReceivedPdu> snapshot() {
+        Table current = table.get();
+        List<ReceivedPdu> states = new ArrayList<>(current.count);
+        for (int slot = 0; slot < current.values.length(); slot++) {
+            ReceivedPdu pdu = current.values.get(slot);
+            if (pdu != null) {
+                states.add(pdu);
+            }
+        }
+        return states;
+    }
+
+    /**
+     * @return the number of entities in the table
+     */
+    public int size() {
+        return table.get().count;
+    }
+
+    /**
+     * Forget every entity
+     */
+    public void clear() {
+        table.set(new Table(INITIAL_CAPACITY));
+    }
+
+    private static final class Table {
+
+        private final AtomicLongArray keys;
+        private final AtomicReferenceArray<ReceivedPdu> values;
+        private final int mask;
+        private final int threshold;
+
+        /**
+         * Only written by the writer thread, read as an estimate by the others
+         */
+        private volatile int count = 0;
+
+        private Table(int capacity) {
+            keys = new AtomicLongArray(capacity);
+            for (int slot = 0; slot < capacity; slot++) {
+                keys.set(slot, EMPTY_KEY);
+            }
+            values = new AtomicReferenceArray<>(capacity);
+            mask = capacity - 1;
+            threshold = capacity / 2;
+        }
+
+        private static int slot(long key, int mask) {
+            long hash = key * 0x9E3779B97F4A7C15L;
+            return (int) (hash ^ (hash >>> 32)) & mask;
+        }
+
+        /**
+         * @return false if the key is new and the table is too full to take it
+         */
+        private boolean put(long key, ReceivedPdu pdu) {
+            int slot = slot(key, mask);
+            while (true) {
+                long slotKey = keys.get(slot);
+                if (slotKey == key) {
+                    values.set(slot, pdu);
+                    return true;
+                }
+                if (slotKey == EMPTY_KEY) {
+                    if (count >= threshold) {
+                        return false;
+                    }
+                    values.set(slot, pdu);
+                    keys.set(slot, key);
+                    count = count + 1;
+                    return true;
+                }
+                slot = (slot + 1) & mask;
+            }
+        }
+
+        private ReceivedPdu get(long key) {
+            int slot = slot(key, mask);
+            while (true) {
+                long slotKey = keys.get(slot);
+                if (slotKey == key) {
+                    return values.get(slot);
+                }
+                if (slotKey == EMPTY_KEY) {
+                    return null;
+                }
+                slot = (slot + 1) & mask;
+            }
+        }
+
+        private Table grow() {
+            Table grown = new Table(keys.length() * 2);
+            for (int slot = 0; slot < keys.length(); slot++) {
+                long slotKey = keys.get(slot);
+                if (slotKey != EMPTY_KEY) {
+                    grown.put(slotKey, values.get(slot));
+                }
+            }
+            return grown;
+        }
+    }
+}
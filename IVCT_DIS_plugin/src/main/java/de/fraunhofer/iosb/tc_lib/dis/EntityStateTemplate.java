@@ -0,0 +1,130 @@
+/*******************************************************************************
+ * Copyright (C) Her Majesty the Queen in Right of Canada, 
+ * as represented by the Minister of National Defence, 2018
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package de.fraunhofer.iosb.tc_lib.dis;
+
+import java.nio.ByteBuffer;
+
+import ca.drdc.ivct.fom.base.BaseEntity;
+import ca.drdc.ivct.fom.base.SpatialRepresentation;
+import de.fraunhofer.iosb.tc_lib.converter.DisWireEncoder;
+import edu.nps.moves.dis.EntityStatePdu;
+
+/**
+ * An EntityStatePdu marshalled once, whose varying fields are patched in place before each send.
+ * <p>
+ * Between two heartbeats of an entity only the timestamp and the spatial
+ * fields change, and they have fixed offsets in an EntityStatePdu. Patching
+ * them skips the conversion to open-dis objects and their marshalling. The
+ * patched fields are written by {@link DisWireEncoder}, exactly as
+ * {@code DisModelConverter.rprEntityToDis} and open-dis would write them.
+ * <p>
+ * A template is not thread-safe, it must be patched and sent by one thread at a time.
+ */
+public class EntityStateTemplate {
+
+    private static final int TIMESTAMP_OFFSET = 4;
+
+    /**
+     * Size of an EntityStatePdu without articulation parameters
+     */
+    public static final int MIN_SIZE = DisWireEncoder.ENTITY_STATE_SIZE;
+
+    private static final long MILLIS_PER_HOUR = 3600000L;
+
+    /**
+     * Timestamp units in an hour, as defined by IEEE 1278.1
+     */
+    private static final double TIME_UNITS_PER_MILLI = (1L << 31) / (double) MILLIS_PER_HOUR;
+
+    private final byte[] data;
+    private final ByteBuffer buffer;
+
+    /**
+     * @param pdu the entity state to marshal, its spatial fields and timestamp are patched afterward
+     */
+    public EntityStateTemplate(EntityStatePdu pdu) {
+        this.data = pdu.marshal();
+        if (data == null || data.length < MIN_SIZE) {
+            throw new IllegalArgumentException("Not a marshalled EntityStatePdu, size " + (data == null ? 0 : data.length));
+        }
+        this.buffer = ByteBuffer.wrap(data);
+    }
+
+    /**
+     * @param entity the entity to encode, its spatial fields and timestamp are patched afterward
+     */
+    public EntityStateTemplate(BaseEntity entity) {
+        this.data = new byte[DisWireEncoder.ENTITY_STATE_SIZE];
+        this.buffer = ByteBuffer.wrap(data);
+        DisWireEncoder.encodeEntityState(entity, 0, buffer);
+        buffer.clear();
+    }
+
+    /**
+     * Patch the spatial fields of the pdu
+     * @param spatial the new spatial representation of the entity
+     */
+    public void update(SpatialRepresentation spatial) {
+        DisWireEncoder.writeSpatial(buffer, 0, spatial);
+    }
+
+    /**
+     * Set the timestamp to the current time, as a DIS absolute timestamp
+     */
+    public void stampNow() {
+        buffer.putInt(TIMESTAMP_OFFSET, (int) absoluteTimestamp(System.currentTimeMillis()));
+    }
+
+    /**
+     * @return the timestamp of the pdu, as last set by {@link #stampNow()}
+     */
+    public long getTimestamp() {
+        return buffer.getInt(TIMESTAMP_OFFSET) & 0xFFFFFFFFL;
+    }
+
+    /**
+     * @param epochMillis a time in milliseconds since the epoch
+     * @return the DIS absolute timestamp of this time: time units since the start of the UTC hour, with the low bit set
+     */
+    public static long absoluteTimestamp(long epochMillis) {
+        long units = (long) ((epochMillis % MILLIS_PER_HOUR) * TIME_UNITS_PER_MILLI);
+        units = Math.min(units, Integer.MAX_VALUE);
+        return (units << 1) | 1L;
+    }
+
+    /**
+     * Copy the pdu at the position of the buffer
+     * @param target the buffer receiving the pdu
+     */
+    public void writeTo(ByteBuffer target) {
+        target.put(data, 0, data.length);
+    }
+
+    /**
+     * @return size of the pdu in bytes
+     */
+    public int getLength() {
+        return data.length;
+    }
+
+    /**
+     * @return the marshalled pdu, patched in place
+     */
+    public byte[] getBytes() {
+        return data;
+    }
+}
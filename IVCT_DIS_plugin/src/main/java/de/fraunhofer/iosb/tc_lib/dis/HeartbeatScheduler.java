@@ -0,0 +1,376 @@
+/*******************************************************************************
+ * Copyright (C) Her Majesty the Queen in Right of Canada, 
+ * as represented by the Minister of National Defence, 2018
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package de.fraunhofer.iosb.tc_lib.dis;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ca.drdc.ivct.fom.base.BaseEntity;
+import ca.drdc.ivct.fom.base.SpatialRepresentation;
+import ca.drdc.ivct.fom.base.structs.EntityIdentifierStruct;
+
+/**
+ * Re-send the EntityStatePdu of a population of entities at the heartbeat rate of each entity.
+ * <p>
+ * The entities are kept in a hierarchical timing wheel: level 0 has one slot per
+ * tick, each higher level has one slot per turn of the level below. Scheduling and
+ * expiring an entity cost O(1) whatever the population, and the entity nodes are
+ * linked in place so a heartbeat does not allocate.
+ * <p>
+ * The first heartbeat of each entity is spread over its period and each entity
+ * keeps its phase afterwards, so the sends are spread over the ticks instead of
+ * bursting. Changes to the population are queued and applied by the scheduler
+ * thread, which is the only one touching the wheel.
+ * <p>
+ * Each entity is marshalled once into an {@link EntityStateTemplate}; a heartbeat
+ * only stamps the time in it and copies it to the socket.
+ */
+public class HeartbeatScheduler implements Runnable {
+
+    private static Logger logger = LoggerFactory.getLogger(HeartbeatScheduler.class);
+
+    public static final long DEFAULT_TICK_MICROS = 1000;
+
+    private static final int WHEEL_BITS = 8;
+    private static final int WHEEL_SIZE = 1 << WHEEL_BITS;
+    private static final int WHEEL_MASK = WHEEL_SIZE - 1;
+    private static final int LEVEL_COUNT = 4;
+
+    private final DisSender sender;
+    private final long tickNanos;
+
+    /**
+     * Slot sentinels of each level, the nodes of a slot form a circular list
+     */
+    private final Heartbeat[][] wheel = new Heartbeat[LEVEL_COUNT][WHEEL_SIZE];
+
+    /**
+     * Entities by packed identifier, only used by the scheduler thread
+     */
+    private final Map<Long, Heartbeat> heartbeats = new HashMap<>();
+
+    private final Queue<Runnable> commands = new ConcurrentLinkedQueue<>();
+
+    private final AtomicLong sentCount = new AtomicLong();
+    private final AtomicLong lateTickCount = new AtomicLong();
+    private volatile int entityCount = 0;
+
+    /**
+     * Next tick to process, only used by the scheduler thread
+     */
+    private long currentTick = 0;
+    private long startNanos;
+    private long phaseCounter = 0;
+
+    private volatile boolean running = false;
+    private Thread thread;
+
+    /**
+     * @param sender the sender of the EntityStatePdu
+     */
+    public HeartbeatScheduler(DisSender sender) {
+        this(sender, DEFAULT_TICK_MICROS);
+    }
+
+    /**
+     * @param sender the sender of the EntityStatePdu
+     * @param tickMicros resolution of the heartbeats in microseconds
+     */
+    public HeartbeatScheduler(DisSender sender, long tickMicros) {
+        this.sender = sender;
+        this.tickNanos = TimeUnit.MICROSECONDS.toNanos(Math.max(1, tickMicros));
+        for (int level = 0; level < LEVEL_COUNT; level++) {
+            for (int slot = 0; slot < WHEEL_SIZE; slot++) {
+                Heartbeat sentinel = new Heartbeat(0, null, 0);
+                sentinel.previous = sentinel;
+                sentinel.next = sentinel;
+                wheel[level][slot] = sentinel;
+            }
+        }
+    }
+
+    /**
+     * Start the scheduler thread
+     */
+    public void start() {
+        running = true;
+        thread = new Thread(this, "DisHeartbeat");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stop the scheduler thread, the entities are kept
+     */
+    public void stop() {
+        running = false;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    /**
+     * Add an entity, or replace it if already present. The conversion is done on the calling thread.
+     * @param entity the entity to send
+     * @param rateHz number of EntityStatePdu sent per second
+     */
+    public void addEntity(BaseEntity entity, double rateHz) {
+        long key = key(entity.getEntityIdentifier());
+        EntityStateTemplate template = new EntityStateTemplate(entity);
+        long periodTicks = periodTicks(rateHz);
+        commands.add(() -> {
+            Heartbeat heartbeat = heartbeats.get(key);
+            if (heartbeat != null) {
+                heartbeat.template = template;
+                heartbeat.periodTicks = periodTicks;
+                return;
+            }
+            heartbeat = new Heartbeat(key, template, periodTicks);
+            heartbeats.put(key, heartbeat);
+            entityCount = heartbeats.size();
+            // spread the first heartbeats over the period
+            phaseCounter++;
+            heartbeat.deadline = currentTick + ((phaseCounter * 0x9E3779B97F4A7C15L) >>> 1) % periodTicks;
+            schedule(heartbeat);
+        });
+    }
+
+    /**
+     * Replace the state sent for an entity from its next heartbeat on, does nothing if the entity was not added
+     * @param entity the new state of the entity
+     */
+    public void updateEntity(BaseEntity entity) {
+        long key = key(entity.getEntityIdentifier());
+        EntityStateTemplate template = new EntityStateTemplate(entity);
+        commands.add(() -> {
+            Heartbeat heartbeat = heartbeats.get(key);
+            if (heartbeat != null) {
+                heartbeat.template = template;
+            }
+        });
+    }
+
+    /**
+     * Patch the position, orientation and velocity sent for an entity from its next heartbeat on,
+     * without converting nor marshalling the entity again. Does nothing if the entity was not added.
+     * @param entityIdentifier the identifier of an added entity
+     * @param spatial the new spatial representation, must not be modified afterward
+     */
+    public void updateSpatial(EntityIdentifierStruct entityIdentifier, SpatialRepresentation spatial) {
+        long key = key(entityIdentifier);
+        commands.add(() -> {
+            Heartbeat heartbeat = heartbeats.get(key);
+            if (heartbeat != null) {
+                heartbeat.template.update(spatial);
+            }
+        });
+    }
+
+    /**
+     * @param entityIdentifier the identifier of an added entity
+     * @param rateHz the new number of EntityStatePdu sent per second, applied after the next heartbeat
+     */
+    public void setRate(EntityIdentifierStruct entityIdentifier, double rateHz) {
+        long key = key(entityIdentifier);
+        long periodTicks = periodTicks(rateHz);
+        commands.add(() -> {
+            Heartbeat heartbeat = heartbeats.get(key);
+            if (heartbeat != null) {
+                heartbeat.periodTicks = periodTicks;
+            }
+        });
+    }
+
+    /**
+     * @param entityIdentifier the identifier of the entity to stop sending
+     */
+    public void removeEntity(EntityIdentifierStruct entityIdentifier) {
+        long key = key(entityIdentifier);
+        commands.add(() -> {
+            Heartbeat heartbeat = heartbeats.remove(key);
+            if (heartbeat != null) {
+                heartbeat.unlink();
+                entityCount = heartbeats.size();
+            }
+        });
+    }
+
+    private static long key(EntityIdentifierStruct entityIdentifier) {
+        return EntityStateTable.key(entityIdentifier.getSite(), entityIdentifier.getApplication(), entityIdentifier.getEntity());
+    }
+
+    private long periodTicks(double rateHz) {
+        if (rateHz <= 0) {
+            throw new IllegalArgumentException("The heartbeat rate must be positive : " + rateHz);
+        }
+        return Math.max(1, Math.round(1e9 / rateHz / tickNanos));
+    }
+
+    @Override
+    public void run() {
+        startNanos = System.nanoTime() - currentTick * tickNanos;
+        while (running) {
+            Runnable command;
+            while ((command = commands.poll()) != null) {
+                command.run();
+            }
+            long nowTick = (System.nanoTime() - startNanos) / tickNanos;
+            if (nowTick - currentTick > 1) {
+                lateTickCount.addAndGet(nowTick - currentTick - 1);
+            }
+            while (currentTick <= nowTick) {
+                processTick();
+            }
+            long nextTickNanos = startNanos + currentTick * tickNanos;
+            LockSupport.parkNanos(this, nextTickNanos - System.nanoTime());
+        }
+    }
+
+    private void processTick() {
+        long tick = currentTick;
+        if ((tick & WHEEL_MASK) == 0) {
+            cascade(1, tick);
+        }
+        Heartbeat sentinel = wheel[0][(int) (tick & WHEEL_MASK)];
+        // detach the slot, the heartbeats sent here are rescheduled in later slots
+        Heartbeat heartbeat = sentinel.next;
+        sentinel.previous.next = null;
+        sentinel.next = sentinel;
+        sentinel.previous = sentinel;
+        currentTick = tick + 1;
+        while (heartbeat != null && heartbeat != sentinel) {
+            Heartbeat next = heartbeat.next;
+            heartbeat.previous = null;
+            heartbeat.next = null;
+            send(heartbeat);
+            heartbeat.deadline += heartbeat.periodTicks;
+            schedule(heartbeat);
+            heartbeat = next;
+        }
+    }
+
+    private void send(Heartbeat heartbeat) {
+        try {
+            sender.sendTemplate(heartbeat.template);
+            sentCount.incrementAndGet();
+        } catch (RuntimeException e) {
+            logger.error("Error while sending the heartbeat of entity :{}", heartbeat.key, e);
+        }
+    }
+
+    /**
+     * Move the heartbeats of the slot of a level reached by this tick down to the lower levels
+     */
+    private void cascade(int level, long tick) {
+        int slot = (int) ((tick >>> (WHEEL_BITS * level)) & WHEEL_MASK);
+        if (slot == 0 && level + 1 < LEVEL_COUNT) {
+            cascade(level + 1, tick);
+        }
+        Heartbeat sentinel = wheel[level][slot];
+        Heartbeat heartbeat = sentinel.next;
+        sentinel.previous.next = null;
+        sentinel.next = sentinel;
+        sentinel.previous = sentinel;
+        while (heartbeat != null && heartbeat != sentinel) {
+            Heartbeat next = heartbeat.next;
+            heartbeat.previous = null;
+            heartbeat.next = null;
+            schedule(heartbeat);
+            heartbeat = next;
+        }
+    }
+
+    /**
+     * Link a heartbeat in the slot of its deadline, a late deadline goes to the next tick
+     */
+    private void schedule(Heartbeat heartbeat) {
+        if (heartbeat.deadline < currentTick) {
+            heartbeat.deadline = currentTick;
+        }
+        long delay = heartbeat.deadline - currentTick;
+        int level = 0;
+        while (level < LEVEL_COUNT - 1 && delay >= 1L << (WHEEL_BITS * (level + 1))) {
+            level++;
+        }
+        if (level == LEVEL_COUNT - 1 && delay >= 1L << (WHEEL_BITS * LEVEL_COUNT)) {
+            // beyond the wheel, wait at the farthest slot and be cascaded again
+            heartbeat.deadline = currentTick + (1L << (WHEEL_BITS * LEVEL_COUNT)) - 1;
+        }
+        Heartbeat sentinel = wheel[level][(int) ((heartbeat.deadline >>> (WHEEL_BITS * level)) & WHEEL_MASK)];
+        heartbeat.previous = sentinel.previous;
+        heartbeat.next = sentinel;
+        sentinel.previous.next = heartbeat;
+        sentinel.previous = heartbeat;
+    }
+
+    /**
+     * @return number of entities sent by this scheduler
+     */
+    public int getEntityCount() {
+        return entityCount;
+    }
+
+    /**
+     * @return number of EntityStatePdu sent
+     */
+    public long getSentCount() {
+        return sentCount.get();
+    }
+
+    /**
+     * @return number of ticks processed late because the scheduler thread could not keep up
+     */
+    public long getLateTickCount() {
+        return lateTickCount.get();
+    }
+
+    /**
+     * Node of an entity in the wheel, also used as slot sentinel
+     */
+    private static final class Heartbeat {
+
+        private final long key;
+        private EntityStateTemplate template;
+        private long periodTicks;
+        private long deadline;
+        private Heartbeat previous;
+        private Heartbeat next;
+
+        private Heartbeat(long key, EntityStateTemplate template, long periodTicks) {
+            this.key = key;
+            this.template = template;
+            this.periodTicks = periodTicks;
+        }
+
+        private void unlink() {
+            if (previous != null) {
+                previous.next = next;
+                next.previous = previous;
+                previous = null;
+                next = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,318 @@
+/*******************************************************************************
+ * Copyright (C) Her Majesty the Queen in Right of Canada, 
+ * as represented by the Minister of National Defence, 2018
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package de.fraunhofer.iosb.tc_lib.dis;
+
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import edu.nps.moves.dis.DetonationPdu;
+import edu.nps.moves.dis.EntityStatePdu;
+import edu.nps.moves.dis.EventID;
+import edu.nps.moves.dis.FirePdu;
+import edu.nps.moves.dis.Pdu;
+import edu.nps.moves.disenum.PduType;
+
+/**
+ * Measure the time the SUT takes to react to a stimulus, continuously and at a fixed rate.
+ * <p>
+ * An EntityStatePdu stimulus is answered by the first EntityStatePdu of the same
+ * entity coming back. A FirePdu or DetonationPdu stimulus gets a new event number
+ * at each probe and is answered by the first FirePdu or DetonationPdu with the
+ * same event identifier. The responses are matched on the raw pdus, without decoding.
+ * <p>
+ * The probes follow a fixed schedule and each latency is measured from the
+ * scheduled send time, not from the actual one, so a stall of the sender or of
+ * the SUT shows in the percentiles instead of delaying the next probes. A probe
+ * due while the previous one with the same identifier is still waiting is not
+ * sent, it is answered by the same response. A probe without response within the
+ * timeout is recorded with its age at expiry and counted as timed out.
+ * <p>
+ * The receiver must not receive the stimuli directly, they would be taken for responses.
+ */
+public class LatencyProbe implements Runnable, PduListener {
+
+    private static Logger logger = LoggerFactory.getLogger(LatencyProbe.class);
+
+    public static final long DEFAULT_TIMEOUT_MILLIS = 5000;
+
+    /**
+     * Offset of the event identifier in a FirePdu and in a DetonationPdu
+     */
+    private static final int EVENT_ID_OFFSET = 30;
+
+    private static final int EVENT_ID_SIZE = 6;
+
+    private final DisSender sender;
+    private final DisReceiver receiver;
+    private final Pdu stimulus;
+    private final int stimulusType;
+    private final long periodNanos;
+    private final long timeoutNanos;
+
+    /**
+     * Probes waiting for their response by identifier, guarded by themselves once removed
+     */
+    private final Map<Long, Probe> outstanding = new ConcurrentHashMap<>();
+
+    /**
+     * Probes sent in schedule order, to expire them without scanning. Only used by the probe thread.
+     */
+    private final ArrayDeque<Probe> sentProbes = new ArrayDeque<>();
+
+    /**
+     * Latency from the scheduled send time, corrected for coordinated omission
+     */
+    private final LatencyHistogram responseTime = new LatencyHistogram();
+
+    /**
+     * Latency from the actual send time, for comparison
+     */
+    private final LatencyHistogram serviceTime = new LatencyHistogram();
+
+    private final LongAdder sentCount = new LongAdder();
+    private final LongAdder skippedCount = new LongAdder();
+    private final LongAdder answeredCount = new LongAdder();
+    private final LongAdder timeoutCount = new LongAdder();
+
+    private volatile boolean running = false;
+    private Thread thread;
+
+    /**
+     * @param sender the sender of the stimuli
+     * @param receiver the receiver of the responses
+     * @param stimulus an EntityStatePdu, FirePdu or DetonationPdu, owned by the probe afterward
+     * @param rateHz number of probes per second
+     * @param timeoutMillis time after which a probe without response is timed out
+     */
+    public LatencyProbe(DisSender sender, DisReceiver receiver, Pdu stimulus, double rateHz, long timeoutMillis) {
+        if (!(stimulus instanceof EntityStatePdu || stimulus instanceof FirePdu || stimulus instanceof DetonationPdu)) {
+            throw new IllegalArgumentException("Unsupported stimulus " + stimulus.getClass().getSimpleName()
+                    + ", expected an EntityStatePdu, a FirePdu or a DetonationPdu");
+        }
+        if (rateHz <= 0) {
+            throw new IllegalArgumentException("Invalid probe rate " + rateHz);
+        }
+        this.sender = sender;
+        this.receiver = receiver;
+        this.stimulus = stimulus;
+        this.stimulusType = stimulus instanceof EntityStatePdu ? PduType.ENTITY_STATE.value
+                : stimulus instanceof FirePdu ? PduType.FIRE.value : PduType.DETONATION.value;
+        this.periodNanos = Math.max(1, (long) (1e9 / rateHz));
+        this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+    }
+
+    /**
+     * Listen to the receiver and start the probe thread
+     */
+    public void start() {
+        receiver.addListener(this);
+        running = true;
+        thread = new Thread(this, "DisLatencyProbe");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stop the probes, the probes still waiting are neither recorded nor counted
+     */
+    public void stop() {
+        running = false;
+        receiver.removeListener(this);
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+        logger.info("{}", this);
+    }
+
+    @Override
+    public void run() {
+        long start = System.nanoTime();
+        long count = 0;
+        EventID event = stimulus instanceof FirePdu ? ((FirePdu) stimulus).getEventID()
+                : stimulus instanceof DetonationPdu ? ((DetonationPdu) stimulus).getEventID() : null;
+        int firstEventNumber = event != null ? event.getEventNumber() : 0;
+
+        while (running) {
+            long scheduled = start + count * periodNanos;
+            long now = System.nanoTime();
+            if (now < scheduled) {
+                LockSupport.parkNanos(this, scheduled - now);
+                continue;
+            }
+            if (event != null) {
+                // skip 0, which is not a valid event number
+                event.setEventNumber(1 + (int) ((firstEventNumber - 1 + count + 65535) % 65535));
+            }
+            probe(scheduled);
+            count++;
+            expire(System.nanoTime());
+        }
+    }
+
+    private void probe(long scheduled) {
+        long key = stimulusKey();
+        Probe waiting = outstanding.get(key);
+        if (waiting != null) {
+            synchronized (waiting) {
+                if (!waiting.done) {
+                    // answered by the response to the probe still waiting
+                    waiting.skipped++;
+                    skippedCount.increment();
+                    return;
+                }
+            }
+        }
+        Probe probe = new Probe(key, scheduled);
+        outstanding.put(key, probe);
+        sentProbes.add(probe);
+        probe.sentNanos = System.nanoTime();
+        sender.sendPdu(stimulus);
+        sentCount.increment();
+    }
+
+    private long stimulusKey() {
+        if (stimulus instanceof EntityStatePdu) {
+            return EntityStateTable.key(((EntityStatePdu) stimulus).getEntityID());
+        }
+        EventID event = stimulus instanceof FirePdu ? ((FirePdu) stimulus).getEventID() : ((DetonationPdu) stimulus).getEventID();
+        return EntityStateTable.key(event.getSite(), event.getApplication(), event.getEventNumber());
+    }
+
+    private void expire(long now) {
+        while (!sentProbes.isEmpty() && now - sentProbes.peek().scheduledNanos >= timeoutNanos) {
+            Probe probe = sentProbes.poll();
+            if (outstanding.remove(probe.key, probe)) {
+                complete(probe, now);
+                timeoutCount.increment();
+            }
+        }
+    }
+
+    @Override
+    public void pduStored(ReceivedPdu receivedPdu) {
+        long key = responseKey(receivedPdu);
+        if (key < 0) {
+            return;
+        }
+        long now = System.nanoTime();
+        Probe probe = outstanding.get(key);
+        if (probe != null && outstanding.remove(key, probe)) {
+            complete(probe, now);
+            answeredCount.increment();
+        }
+    }
+
+    /**
+     * @return the identifier matching the response against the stimulus, -1 if the pdu cannot be a response
+     */
+    private long responseKey(ReceivedPdu receivedPdu) {
+        int type = receivedPdu.getPduType();
+        if (stimulusType == PduType.ENTITY_STATE.value) {
+            return type == PduType.ENTITY_STATE.value ? receivedPdu.getEntityKey() : -1;
+        }
+        byte[] data = receivedPdu.getBytes();
+        if ((type != PduType.FIRE.value && type != PduType.DETONATION.value) || data.length < EVENT_ID_OFFSET + EVENT_ID_SIZE) {
+            return -1;
+        }
+        return EntityStateTable.key(readUnsignedShort(data, EVENT_ID_OFFSET), readUnsignedShort(data, EVENT_ID_OFFSET + 2),
+                readUnsignedShort(data, EVENT_ID_OFFSET + 4));
+    }
+
+    private static int readUnsignedShort(byte[] data, int offset) {
+        return ((data[offset] & 0xFF) << 8) | (data[offset + 1] & 0xFF);
+    }
+
+    /**
+     * Record the latency of a probe and of the probes skipped while it was waiting
+     */
+    private void complete(Probe probe, long now) {
+        synchronized (probe) {
+            probe.done = true;
+            responseTime.record(now - probe.scheduledNanos);
+            for (int i = 1; i <= probe.skipped; i++) {
+                responseTime.record(now - probe.scheduledNanos - i * periodNanos);
+            }
+            if (probe.sentNanos != 0) {
+                serviceTime.record(now - probe.sentNanos);
+            }
+        }
+    }
+
+    /**
+     * @return latencies from the scheduled send times, including the probes skipped and timed out
+     */
+    public LatencyHistogram getResponseTime() {
+        return responseTime;
+    }
+
+    /**
+     * @return latencies from the actual send times of the probes sent, hiding the stalls
+     */
+    public LatencyHistogram getServiceTime() {
+        return serviceTime;
+    }
+
+    public long getSentCount() {
+        return sentCount.sum();
+    }
+
+    /**
+     * @return number of probes not sent because the previous probe with the same identifier was waiting
+     */
+    public long getSkippedCount() {
+        return skippedCount.sum();
+    }
+
+    public long getAnsweredCount() {
+        return answeredCount.sum();
+    }
+
+    public long getTimeoutCount() {
+        return timeoutCount.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "LatencyProbe [sent=" + getSentCount() + ", skipped=" + getSkippedCount() + ", answered="
+            + getAnsweredCount() + ", timedOut=" + getTimeoutCount() + ", responseTime (us)="
+            + responseTime.getSummary() + ", serviceTime (us)=" + serviceTime.getSummary() + "]";
+    }
+
+    /**
+     * A probe waiting for its response
+     */
+    private static final class Probe {
+
+        private final long key;
+        private final long scheduledNanos;
+        private volatile long sentNanos;
+        private int skipped = 0;
+        private boolean done = false;
+
+        private Probe(long key, long scheduledNanos) {
+            this.key = key;
+            this.scheduledNanos = scheduledNanos;
+        }
+    }
+}
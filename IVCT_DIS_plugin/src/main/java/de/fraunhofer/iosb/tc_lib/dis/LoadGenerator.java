@@ -0,0 +1,290 @@
+/*******************************************************************************
+ * Copyright (C) Her Majesty the Queen in Right of Canada, 
+ * as represented by the Minister of National Defence, 2018
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package de.fraunhofer.iosb.tc_lib.dis;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ca.drdc.ivct.fom.base.BaseEntity;
+import ca.drdc.ivct.fom.base.RotatingSpatialRepresentation;
+import ca.drdc.ivct.fom.base.SpatialRepresentation;
+import ca.drdc.ivct.fom.base.structs.EntityIdentifierStruct;
+import ca.drdc.ivct.fom.base.structs.SpatialFPStruct;
+import ca.drdc.ivct.fom.base.structs.SpatialRVStruct;
+import ca.drdc.ivct.fom.base.structs.WorldLocationStruct;
+
+/**
+ * Send the EntityStatePdu of a synthetic population built from FAD entities, at an aggregate rate following a {@link LoadProfile}.
+ * <p>
+ * Each FAD entity is a template replicated to synthetic entities with their own
+ * identifier and a jittered position. The synthetic entities are marshalled once
+ * in {@link EntityStateTemplate} and sent in turn, so the sending thread only
+ * paces and copies. The run reports the rate achieved against the profile.
+ */
+public class LoadGenerator {
+
+    private static Logger logger = LoggerFactory.getLogger(LoadGenerator.class);
+
+    private static final long REPORT_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    /**
+     * Pdus sent before checking the time again, so that stop() and the end of the run are
+     * noticed quickly. A stall is caught up with back-to-back batches, the rate is not capped.
+     */
+    private static final int MAX_BATCH = 256;
+
+    private static final long PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+    /**
+     * Entity numbers available in one application, 0 and 65535 are reserved
+     */
+    private static final int ENTITIES_PER_APPLICATION = 65534;
+
+    private final DisSender sender;
+    private final LoadProfile profile;
+    private final EntityStateTemplate[] entities;
+
+    /**
+     * Where the sends are recorded, null if they are not
+     */
+    private final SendHistory sendHistory;
+
+    private final int site;
+    private final int firstApplication;
+    private volatile boolean running = false;
+
+    /**
+     * Build the synthetic population. The conversion and marshalling are done here, before the run.
+     * @param sender the sender of the EntityStatePdu
+     * @param fadEntities the entities replicated, in the order of the FAD files
+     * @param profile the shape of the load
+     * @param seed seed of the position jitter, the same seed gives the same population
+     */
+    public LoadGenerator(DisSender sender, List<BaseEntity> fadEntities, LoadProfile profile, long seed) {
+        this(sender, fadEntities, profile, seed, firstSyntheticApplication(fadEntities), null);
+    }
+
+    /**
+     * Build the synthetic population from a given application, recording its sends
+     * @param sender the sender of the EntityStatePdu
+     * @param fadEntities the entities replicated, in the order of the FAD files
+     * @param profile the shape of the load
+     * @param seed seed of the position jitter, the same seed gives the same population
+     * @param firstApplication application of the first synthetic entities, at least {@link #firstSyntheticApplication(List)}
+     * @param sendHistory where each send is recorded, null to record none
+     */
+    public LoadGenerator(DisSender sender, List<BaseEntity> fadEntities, LoadProfile profile, long seed,
+            int firstApplication, SendHistory sendHistory) {
+        this.sender = sender;
+        this.profile = profile;
+        List<BaseEntity> population = synthesize(fadEntities, firstApplication, profile.getEntityCount(),
+                profile.getPositionJitter(), new Random(seed));
+        this.entities = new EntityStateTemplate[population.size()];
+        this.sendHistory = sendHistory;
+        this.site = fadEntities.get(0).getEntityIdentifier().getSite();
+        this.firstApplication = firstApplication;
+        for (int i = 0; i < entities.length; i++) {
+            entities[i] = new EntityStateTemplate(population.get(i));
+        }
+    }
+
+    /**
+     * Replicate FAD entities to a synthetic population.
+     * <p>
+     * The templates are used in turn. The synthetic entities keep the site of the
+     * first template and use the applications above the highest one of the FAD
+     * entities of that site, numbered from 1, so they never collide with the FAD
+     * entities nor with each other.
+     * @param fadEntities the entities replicated
+     * @param count number of synthetic entities
+     * @param positionJitter maximum distance in meters to the template, along each axis
+     * @param random source of the position jitter
+     * @return the synthetic entities
+     * @throws IllegalArgumentException if there is no FAD entity or the applications above the FAD ones are too few
+     */
+    public static List<BaseEntity> synthesize(List<BaseEntity> fadEntities, int count, double positionJitter, Random random) {
+        return synthesize(fadEntities, firstSyntheticApplication(fadEntities), count, positionJitter, random);
+    }
+
+    /**
+     * Replicate FAD entities to a synthetic population numbered from a given application
+     * @param fadEntities the entities replicated
+     * @param firstApplication application of the first synthetic entities, at least {@link #firstSyntheticApplication(List)}
+     * @param count number of synthetic entities
+     * @param positionJitter maximum distance in meters to the template, along each axis
+     * @param random source of the position jitter
+     * @return the synthetic entities
+     * @throws IllegalArgumentException if the first application collides with the FAD entities or the applications above it are too few
+     */
+    public static List<BaseEntity> synthesize(List<BaseEntity> fadEntities, int firstApplication, int count,
+            double positionJitter, Random random) {
+        if (firstApplication < firstSyntheticApplication(fadEntities)) {
+            throw new IllegalArgumentException("Application " + firstApplication + " is used by the FAD entities");
+        }
+        if (firstApplication + applicationCount(count) - 1 > 0xFFFF) {
+            throw new IllegalArgumentException("Not enough applications above " + (firstApplication - 1) + " for "
+                    + count + " synthetic entities");
+        }
+        int site = fadEntities.get(0).getEntityIdentifier().getSite();
+        List<BaseEntity> population = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            BaseEntity template = fadEntities.get(i % fadEntities.size());
+            BaseEntity entity = new BaseEntity();
+            entity.setEntityIdentifier(new EntityIdentifierStruct(site,
+                    firstApplication + i / ENTITIES_PER_APPLICATION, 1 + i % ENTITIES_PER_APPLICATION));
+            entity.setEntityType(template.getEntityType());
+            entity.setSpatialRepresentation(jitter(template.getSpatialRepresentation(), positionJitter, random));
+            population.add(entity);
+        }
+        return population;
+    }
+
+    /**
+     * @param fadEntities the entities replicated
+     * @return the application above the highest one of the FAD entities sharing the site of the first one
+     */
+    public static int firstSyntheticApplication(List<BaseEntity> fadEntities) {
+        if (fadEntities.isEmpty()) {
+            throw new IllegalArgumentException("At least one FAD entity is required as template");
+        }
+        int site = fadEntities.get(0).getEntityIdentifier().getSite();
+        int highest = 0;
+        for (BaseEntity fadEntity : fadEntities) {
+            EntityIdentifierStruct identifier = fadEntity.getEntityIdentifier();
+            if (identifier.getSite() == site) {
+                highest = Math.max(highest, identifier.getApplication());
+            }
+        }
+        return highest + 1;
+    }
+
+    /**
+     * @param count number of synthetic entities
+     * @return number of applications they are numbered in
+     */
+    public static int applicationCount(int count) {
+        return (int) ((count + ENTITIES_PER_APPLICATION - 1L) / ENTITIES_PER_APPLICATION);
+    }
+
+    private static SpatialRepresentation jitter(SpatialRepresentation spatial, double positionJitter, Random random) {
+        WorldLocationStruct location = spatial.getWorldLocation();
+        WorldLocationStruct jittered = new WorldLocationStruct(
+                location.getxPosition() + (2 * random.nextDouble() - 1) * positionJitter,
+                location.getyPosition() + (2 * random.nextDouble() - 1) * positionJitter,
+                location.getzPosition() + (2 * random.nextDouble() - 1) * positionJitter);
+        if (spatial instanceof RotatingSpatialRepresentation) {
+            RotatingSpatialRepresentation rv = (RotatingSpatialRepresentation) spatial;
+            return new SpatialRVStruct(rv.getDeadReckoningAlgorithm(), jittered, rv.isFrozen(), rv.getOrientation(),
+                    rv.getVelocityVector(), rv.getAccelerationVector(), rv.getAngularVelocityVector());
+        }
+        return new SpatialFPStruct(spatial.getDeadReckoningAlgorithm(), jittered, spatial.isFrozen(),
+                spatial.getOrientation(), spatial.getVelocityVector());
+    }
+
+    /**
+     * Send the load on the calling thread until the end of the profile or a call to {@link #stop()}
+     * @return the rate achieved against the profile, per second of the run
+     */
+    public LoadReport run() {
+        logger.info("Starting load of {} synthetic entities, {}", entities.length, profile);
+        LoadReport report = new LoadReport(profile);
+        running = true;
+        long start = System.nanoTime();
+        long end = start + TimeUnit.MILLISECONDS.toNanos(profile.getDurationMillis());
+        long intervalStart = start;
+        long intervalTargetStart = 0;
+        long intervalSentStart = 0;
+        long sent = 0;
+        int next = 0;
+
+        while (true) {
+            long now = System.nanoTime();
+            boolean finished = !running || now >= end;
+            if (now >= end) {
+                now = end;
+            }
+            long due = (long) profile.pdusDueAt((now - start) / 1e9);
+
+            if ((finished && now > intervalStart) || now - intervalStart >= REPORT_INTERVAL_NANOS) {
+                report.addInterval(TimeUnit.NANOSECONDS.toMillis(now - start), now - intervalStart,
+                        due - intervalTargetStart, sent - intervalSentStart);
+                logger.debug("Load at {} ms : {} pdus due, {} sent", TimeUnit.NANOSECONDS.toMillis(now - start), due, sent);
+                intervalStart = now;
+                intervalTargetStart = due;
+                intervalSentStart = sent;
+            }
+            if (finished) {
+                break;
+            }
+
+            if (sent >= due) {
+                LockSupport.parkNanos(PARK_NANOS);
+                continue;
+            }
+            long batchEnd = Math.min(due, sent + MAX_BATCH);
+            while (sent < batchEnd) {
+                sender.sendTemplate(entities[next]);
+                if (sendHistory != null) {
+                    sendHistory.record(next, entities[next].getTimestamp(), System.nanoTime());
+                }
+                next = next + 1 < entities.length ? next + 1 : 0;
+                sent++;
+            }
+        }
+        running = false;
+        sender.flush();
+        logger.info("{}", report);
+        return report;
+    }
+
+    /**
+     * Stop a run from another thread, the report covers the run until now
+     */
+    public void stop() {
+        running = false;
+    }
+
+    /**
+     * @param entityKey an entity identifier packed with {@link EntityStateTable#key(int, int, int)}
+     * @return index of the synthetic entity with this identifier, -1 if it is not one of them
+     */
+    public int indexOf(long entityKey) {
+        if (entityKey < 0 || (int) (entityKey >>> 32) != (site & 0xFFFF)) {
+            return -1;
+        }
+        int application = (int) (entityKey >>> 16) & 0xFFFF;
+        int entity = (int) entityKey & 0xFFFF;
+        if (entity < 1 || entity > ENTITIES_PER_APPLICATION) {
+            return -1;
+        }
+        long index = (long) ((application - firstApplication) & 0xFFFF) * ENTITIES_PER_APPLICATION + entity - 1;
+        return index < entities.length ? (int) index : -1;
+    }
+
+    /**
+     * @return number of synthetic entities
+     */
+    public int getEntityCount() {
+        return entities.length;
+    }
+}
@@ -0,0 +1,118 @@
+/*******************************************************************************
+ * Copyright (C) Her Majesty the Queen in Right of Canada, 
+ * as represented by the Minister of National Defence, 2018
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package de.fraunhofer.iosb.tc_lib.dis;
+
+/**
+ * Shape of the load sent by the {@link LoadGenerator}.
+ * <p>
+ * The aggregate rate rises linearly from the start rate to the target rate
+ * during the ramp, then stays at the target rate until the end of the run.
+ */
+public class LoadProfile {
+
+    public static final int DEFAULT_ENTITY_COUNT = 1000;
+
+    public static final long DEFAULT_DURATION_MILLIS = 60000;
+
+    /**
+     * Maximum distance in meters of a synthetic entity to its template, along each axis
+     */
+    public static final double DEFAULT_POSITION_JITTER = 1000.0;
+
+    private final int entityCount;
+    private final double startRate;
+    private final double targetRate;
+    private final long rampMillis;
+    private final long durationMillis;
+    private final double positionJitter;
+
+    /**
+     * @param entityCount number of synthetic entities
+     * @param startRate aggregate rate at the start of the ramp, in pdus per second
+     * @param targetRate aggregate rate at the end of the ramp, in pdus per second
+     * @param rampMillis duration of the ramp in milliseconds, 0 to start at the target rate
+     * @param durationMillis duration of the whole run in milliseconds, ramp included
+     * @param positionJitter maximum distance in meters of a synthetic entity to its template, along each axis
+     */
+    public LoadProfile(int entityCount, double startRate, double targetRate, long rampMillis, long durationMillis,
+            double positionJitter) {
+        if (entityCount <= 0 || targetRate <= 0 || startRate < 0 || durationMillis <= 0) {
+            throw new IllegalArgumentException("Invalid load profile, entityCount=" + entityCount + " startRate="
+                    + startRate + " targetRate=" + targetRate + " durationMillis=" + durationMillis);
+        }
+        this.entityCount = entityCount;
+        this.startRate = startRate;
+        this.targetRate = targetRate;
+        this.rampMillis = Math.max(0, Math.min(rampMillis, durationMillis));
+        this.durationMillis = durationMillis;
+        this.positionJitter = positionJitter;
+    }
+
+    public int getEntityCount() {
+        return entityCount;
+    }
+
+    public double getStartRate() {
+        return startRate;
+    }
+
+    public double getTargetRate() {
+        return targetRate;
+    }
+
+    public long getRampMillis() {
+        return rampMillis;
+    }
+
+    public long getDurationMillis() {
+        return durationMillis;
+    }
+
+    public double getPositionJitter() {
+        return positionJitter;
+    }
+
+    /**
+     * @param elapsedSeconds time since the start of the run
+     * @return the target aggregate rate at this time, in pdus per second
+     */
+    public double rateAt(double elapsedSeconds) {
+        double rampSeconds = rampMillis / 1000.0;
+        if (elapsedSeconds >= rampSeconds) {
+            return targetRate;
+        }
+        return startRate + (targetRate - startRate) * elapsedSeconds / rampSeconds;
+    }
+
+    /**
+     * @param elapsedSeconds time since the start of the run
+     * @return number of pdus that should have been sent at this time, the integral of the rate
+     */
+    public double pdusDueAt(double elapsedSeconds) {
+        double rampSeconds = rampMillis / 1000.0;
+        if (elapsedSeconds <= rampSeconds) {
+            return startRate * elapsedSeconds + (targetRate - startRate) * elapsedSeconds * elapsedSeconds / (2 * rampSeconds);
+        }
+        return (startRate + targetRate) * rampSeconds / 2 + targetRate * (elapsedSeconds - rampSeconds);
+    }
+
+    @Override
+    public String toString() {
+        return "LoadProfile [entityCount=" + entityCount + ", startRate=" + startRate + ", targetRate=" + targetRate
+            + ", rampMillis=" + rampMillis + ", durationMillis=" + durationMillis + ", positionJitter=" + positionJitter + "]";
+    }
+}
@@ -0,0 +1,148 @@
+/*******************************************************************************
+ * Copyright (C) Her Majesty the Queen in Right of Canada, 
+ * as represented by the Minister of National Defence, 2018
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package de.fraunhofer.iosb.tc_lib.dis;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Rate achieved by a {@link LoadGenerator} run against its target, per interval and overall.
+ */
+public class LoadReport {
+
+    private final LoadProfile profile;
+    private final List<Interval> intervals = new ArrayList<>();
+    private long targetCount = 0;
+    private long sentCount = 0;
+    private long elapsedNanos = 0;
+
+    /**
+     * @param profile the profile of the run
+     */
+    public LoadReport(LoadProfile profile) {
+        this.profile = profile;
+    }
+
+    /**
+     * Record an interval of the run
+     * @param endMillis end of the interval since the start of the run
+     * @param durationNanos duration of the interval
+     * @param target number of pdus the profile required during the interval
+     * @param sent number of pdus sent during the interval
+     */
+    void addInterval(long endMillis, long durationNanos, long target, long sent) {
+        intervals.add(new Interval(endMillis, target * 1e9 / durationNanos, sent * 1e9 / durationNanos));
+        targetCount += target;
+        sentCount += sent;
+        elapsedNanos += durationNanos;
+    }
+
+    public LoadProfile getProfile() {
+        return profile;
+    }
+
+    public List<Interval> getIntervals() {
+        return Collections.unmodifiableList(intervals);
+    }
+
+    /**
+     * @return number of pdus the profile required over the run
+     */
+    public long getTargetCount() {
+        return targetCount;
+    }
+
+    /**
+     * @return number of pdus sent over the run
+     */
+    public long getSentCount() {
+        return sentCount;
+    }
+
+    /**
+     * @return average rate required by the profile, in pdus per second
+     */
+    public double getTargetRate() {
+        return elapsedNanos > 0 ? targetCount * 1e9 / elapsedNanos : 0;
+    }
+
+    /**
+     * @return average rate achieved, in pdus per second
+     */
+    public double getAchievedRate() {
+        return elapsedNanos > 0 ? sentCount * 1e9 / elapsedNanos : 0;
+    }
+
+    /**
+     * @return achieved over required number of pdus, 1 if the sender kept up with the profile
+     */
+    public double getAchievedRatio() {
+        return targetCount > 0 ? (double) sentCount / targetCount : 1;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        builder.append(String.format("Load report %s%n", profile));
+        builder.append(String.format("%10s %12s %12s%n", "time (ms)", "target/s", "achieved/s"));
+        for (Interval interval : intervals) {
+            builder.append(String.format("%10d %12.1f %12.1f%n", interval.getEndMillis(), interval.getTargetRate(),
+                    interval.getAchievedRate()));
+        }
+        builder.append(String.format("Overall : target %.1f/s, achieved %.1f/s (%.1f%%), %d of %d pdus sent",
+                getTargetRate(), getAchievedRate(), getAchievedRatio() * 100, sentCount, targetCount));
+        return builder.toString();
+    }
+
+    /**
+     * Rates over one interval of the run
+     */
+    public static final class Interval {
+
+        private final long endMillis;
+        private final double targetRate;
+        private final double achievedRate;
+
+        private Interval(long endMillis, double targetRate, double achievedRate) {
+            this.endMillis = endMillis;
+            this.targetRate = targetRate;
+            this.achievedRate = achievedRate;
+        }
+
+        /**
+         * @return end of the interval since the start of the run, in milliseconds
+         */
+        public long getEndMillis() {
+            return endMillis;
+        }
+
+        /**
+         * @return rate required by the profile during the interval, in pdus per second
+         */
+        public double getTargetRate() {
+            return targetRate;
+        }
+
+        /**
+         * @return rate achieved during the interval, in pdus per second
+         */
+        public double getAchievedRate() {
+            return achievedRate;
+        }
+    }
+}
@@ -0,0 +1,51 @@
+/*******************************************************************************
+ * Copyright (C) Her Majesty the Queen in Right of Canada, 
+ * as represented by the Minister of National Defence, 2018
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package de.fraunhofer.iosb.tc_lib.dis;
+
+import java.util.List;
+
+import edu.nps.moves.dis.Pdu;
+
+/**
+ * Pdus returned by an incremental read, with the cursor to pass to the next read.
+ */
+public class PduBatch {
+
+    private final List<Pdu> pdus;
+    private final long cursor;
+
+    /**
+     * @param pdus the pdus read, in reception order
+     * @param cursor the cursor to read the pdus received after these ones
+     */
+    public PduBatch(List<Pdu> pdus, long cursor) {
+        this.pdus = pdus;
+        this.cursor = cursor;
+    }
+
+    public List<Pdu> getPdus() {
+        return pdus;
+    }
+
+    public long getCursor() {
+        return cursor;
+    }
+
+    public boolean isEmpty() {
+        return pdus.isEmpty();
+    }
+}
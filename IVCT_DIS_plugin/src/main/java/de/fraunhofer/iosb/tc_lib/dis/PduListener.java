@@ -0,0 +1,31 @@
+/*******************************************************************************
+ * Copyright (C) Her Majesty the Queen in Right of Canada, 
+ * as represented by the Minister of National Defence, 2018
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package de.fraunhofer.iosb.tc_lib.dis;
+
+/**
+ * Notified by the decode stage of the {@link DisReceiver} each time a pdu is stored.
+ * <p>
+ * Called on the decode thread of the pdu, possibly concurrently for pdus of
+ * different entities, so an implementation must be thread-safe and return quickly.
+ */
+public interface PduListener {
+
+    /**
+     * @param receivedPdu the pdu just stored
+     */
+    void pduStored(ReceivedPdu receivedPdu);
+}
@@ -0,0 +1,236 @@
+/*******************************************************************************
+ * Copyright (C) Her Majesty the Queen in Right of Canada, 
+ * as represented by the Minister of National Defence, 2018
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package de.fraunhofer.iosb.tc_lib.dis;
+
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+
+/**
+ * Append-only log filled by a single writer thread and read without lock by
+ * any number of reader threads.
+ * <p>
+ * Elements are stored in fixed size segments so that appending never copies
+ * the elements already stored. The writer publishes an element by updating
+ * the volatile size after the element, its segment and the segment directory
+ * were written; a reader reading the size first therefore always sees every
+ * element below that size.
+ * <p>
+ * The writer may also evict the oldest elements. An evicted element is
+ * cleared from its segment, and a segment is released once all its elements
+ * are evicted, so evicted elements can be garbage collected. The element
+ * indexes are longs and the directory only spans the segments in use, so a
+ * log evicting as fast as it appends can run for any number of appends.
+ *
+ * @param <T> type of the stored elements
+ */
+public class PduLog<T> {
+
+    private static final int SEGMENT_SHIFT = 10;
+    private static final int SEGMENT_SIZE = 1 << SEGMENT_SHIFT;
+    private static final int SEGMENT_MASK = SEGMENT_SIZE - 1;
+    private static final int INITIAL_SEGMENT_COUNT = 16;
+
+    /**
+     * Segment directory, replaced by a larger or compacted copy when full
+     */
+    private volatile Directory directory = new Directory(new Object[INITIAL_SEGMENT_COUNT][], 0);
+
+    /**
+     * Number of published elements since creation, a long so that a long capture never wraps
+     */
+    private volatile long size = 0;
+
+    /**
+     * Index of the oldest element not evicted
+     */
+    private volatile long head = 0;
+
+    /**
+     * Append an element. Must only be called by the writer thread.
+     * @param element the element to append
+     */
+    public void append(T element) {
+        long index = size;
+        long segmentNumber = index >>> SEGMENT_SHIFT;
+        Directory current = directory;
+        if (segmentNumber - current.firstSegment >= current.segments.length) {
+            current = grow(current, segmentNumber);
+            directory = current;
+        }
+        int slot = (int) (segmentNumber - current.firstSegment);
+        Object[] segment = current.segments[slot];
+        if (segment == null) {
+            segment = new Object[SEGMENT_SIZE];
+            current.segments[slot] = segment;
+        }
+        segment[(int) index & SEGMENT_MASK] = element;
+        size = index + 1;
+    }
+
+    /**
+     * Drop the released segments at the start of the directory, and double it if
+     * it is still more than half full, so that it only spans the segments in use.
+     */
+    private Directory grow(Directory current, long segmentNumber) {
+        long firstLive = head >>> SEGMENT_SHIFT;
+        int liveCount = (int) (segmentNumber - firstLive);
+        int length = current.segments.length;
+        if (liveCount >= length / 2) {
+            length *= 2;
+        }
+        Object[][] segments = new Object[length][];
+        System.arraycopy(current.segments, (int) (firstLive - current.firstSegment), segments, 0, liveCount);
+        return new Directory(segments, firstLive);
+    }
+
+    /**
+     * @return the number of elements published and not evicted yet
+     */
+    public int size() {
+        return (int) Math.min(Integer.MAX_VALUE, size - head);
+    }
+
+    /**
+     * @return the oldest element not evicted, null if the log is empty
+     */
+    public T peekOldest() {
+        long index = head;
+        if (index == size) {
+            return null;
+        }
+        return elementAt(directory, index);
+    }
+
+    /**
+     * Evict the oldest element. Must only be called by the writer thread.
+     * @return the evicted element, null if the log is empty
+     */
+    public T evictOldest() {
+        T element = peekOldest();
+        if (element == null) {
+            return null;
+        }
+        long index = head;
+        Directory current = directory;
+        int slot = (int) ((index >>> SEGMENT_SHIFT) - current.firstSegment);
+        current.segments[slot][(int) index & SEGMENT_MASK] = null;
+        if (((int) index & SEGMENT_MASK) == SEGMENT_MASK) {
+            current.segments[slot] = null;
+        }
+        head = index + 1;
+        return element;
+    }
+
+    /**
+     * Copy every published element into the given list, in append order.
+     * Elements evicted while copying may be missing from the list.
+     * @param target the list receiving the elements
+     * @param mapper conversion applied to each element, a null result is not added
+     * @param <R> type of the elements added to the list
+     */
+    public <R> void copyTo(List<R> target, Function<? super T, ? extends R> mapper) {
+        long count = size;
+        Directory current = directory;
+        for (long index = head; index < count; index++) {
+            Object[] segment = segmentOf(current, index);
+            if (segment == null) {
+                // evicted meanwhile, skip to the next segment
+                index |= SEGMENT_MASK;
+                continue;
+            }
+            @SuppressWarnings("unchecked")
+            T element = (T) segment[(int) index & SEGMENT_MASK];
+            if (element != null) {
+                R mapped = mapper.apply(element);
+                if (mapped != null) {
+                    target.add(mapped);
+                }
+            }
+        }
+    }
+
+    /**
+     * Copy the published elements whose key is in [fromKey, toKey) into the given list,
+     * in append order. The keys must increase with the append order; the first element
+     * is found by binary search, so the elements before it are never visited.
+     * @param keyOf the key of an element
+     * @param fromKey lowest key copied
+     * @param toKey key above the highest key copied
+     * @param target the list receiving the elements
+     * @param mapper conversion applied to each element, a null result is not added
+     * @param <R> type of the elements added to the list
+     */
+    public <R> void copyRange(ToLongFunction<? super T> keyOf, long fromKey, long toKey, List<R> target,
+            Function<? super T, ? extends R> mapper) {
+        long count = size;
+        Directory current = directory;
+        long low = head;
+        long high = count;
+        while (low < high) {
+            long middle = (low + high) >>> 1;
+            T element = elementAt(current, middle);
+            // an element evicted meanwhile is older than any element left
+            if (element == null || keyOf.applyAsLong(element) < fromKey) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        for (long index = low; index < count; index++) {
+            T element = elementAt(current, index);
+            if (element == null) {
+                continue;
+            }
+            if (keyOf.applyAsLong(element) >= toKey) {
+                return;
+            }
+            R mapped = mapper.apply(element);
+            if (mapped != null) {
+                target.add(mapped);
+            }
+        }
+    }
+
+    /**
+     * @return the segment holding this element, null if it was released or dropped from this directory
+     */
+    private static Object[] segmentOf(Directory current, long index) {
+        long slot = (index >>> SEGMENT_SHIFT) - current.firstSegment;
+        return slot >= 0 && slot < current.segments.length ? current.segments[(int) slot] : null;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T elementAt(Directory current, long index) {
+        Object[] segment = segmentOf(current, index);
+        return segment != null ? (T) segment[(int) index & SEGMENT_MASK] : null;
+    }
+
+    /**
+     * Segments in use, the first one holding the elements of segment number firstSegment
+     */
+    private static final class Directory {
+
+        private final Object[][] segments;
+        private final long firstSegment;
+
+        private Directory(Object[][] segments, long firstSegment) {
+            this.segments = segments;
+            this.firstSegment = firstSegment;
+        }
+    }
+}
@@ -0,0 +1,178 @@
+/*******************************************************************************
+ * Copyright (C) Her Majesty the Queen in Right of Canada, 
+ * as represented by the Minister of National Defence, 2018
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package de.fraunhofer.iosb.tc_lib.dis;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded lock-free ring of raw pdus with a single producer and a single consumer.
+ * <p>
+ * The producer fills a slot then advances the tail with an ordered write,
+ * the consumer reads the tail before the slot; the consumer clears the slot
+ * then advances the head the same way. A pdu offered while the ring is full
+ * is dropped and counted, the producer never waits.
+ */
+public class PduRing {
+
+    private final byte[][] pdus;
+    private final long[] receiveTimes;
+    private final long[] receiveNanos;
+    private final long[] sequences;
+    private final int mask;
+
+    /**
+     * Next slot to write, only advanced by the producer
+     */
+    private final AtomicLong tail = new AtomicLong();
+
+    /**
+     * Next slot to read, only advanced by the consumer
+     */
+    private final AtomicLong head = new AtomicLong();
+
+    /**
+     * Last head read by the producer, refreshed only when the ring looks full
+     */
+    private long cachedHead = 0;
+
+    private final AtomicLong droppedCount = new AtomicLong();
+
+    /**
+     * @param capacity minimum number of slots, rounded up to a power of two
+     */
+    public PduRing(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        this.pdus = new byte[size][];
+        this.receiveTimes = new long[size];
+        this.receiveNanos = new long[size];
+        this.sequences = new long[size];
+        this.mask = size - 1;
+    }
+
+    /**
+     * Add a pdu. Must only be called by the producer thread.
+     * @param data the pdu in IEEE 1278.1 format
+     * @param receiveTime reception time in milliseconds
+     * @param receiveNano reception time from {@link System#nanoTime()}, 0 if not measured
+     * @param sequence reception sequence number
+     * @return false if the ring was full and the pdu dropped
+     */
+    public boolean offer(byte[] data, long receiveTime, long receiveNano, long sequence) {
+        long currentTail = tail.get();
+        if (currentTail - cachedHead > mask) {
+            cachedHead = head.get();
+            if (currentTail - cachedHead > mask) {
+                droppedCount.incrementAndGet();
+                return false;
+            }
+        }
+        int slot = (int) currentTail & mask;
+        pdus[slot] = data;
+        receiveTimes[slot] = receiveTime;
+        receiveNanos[slot] = receiveNano;
+        sequences[slot] = sequence;
+        tail.lazySet(currentTail + 1);
+        return true;
+    }
+
+    /**
+     * @return true if there is no pdu to consume
+     */
+    public boolean isEmpty() {
+        return head.get() == tail.get();
+    }
+
+    /**
+     * @return the oldest pdu, null if the ring is empty. Must only be called by the consumer thread.
+     */
+    public byte[] peekData() {
+        long currentHead = head.get();
+        if (currentHead == tail.get()) {
+            return null;
+        }
+        return pdus[(int) currentHead & mask];
+    }
+
+    /**
+     * @return reception time of the pdu returned by {@link #peekData()}
+     */
+    public long peekReceiveTime() {
+        return receiveTimes[(int) head.get() & mask];
+    }
+
+    /**
+     * @return {@link System#nanoTime()} at reception of the pdu returned by {@link #peekData()}
+     */
+    public long peekReceiveNano() {
+        return receiveNanos[(int) head.get() & mask];
+    }
+
+    /**
+     * @return sequence number of the pdu returned by {@link #peekData()}
+     */
+    public long peekSequence() {
+        return sequences[(int) head.get() & mask];
+    }
+
+    /**
+     * Can be called by any thread.
+     * @return sequence number of the oldest pdu waiting in the ring, {@link Long#MAX_VALUE} if the ring is empty
+     */
+    public long oldestSequence() {
+        while (true) {
+            long currentHead = head.get();
+            if (currentHead == tail.get()) {
+                return Long.MAX_VALUE;
+            }
+            long sequence = sequences[(int) currentHead & mask];
+            // the slot cannot be reused while the head has not moved
+            if (head.get() == currentHead) {
+                return sequence;
+            }
+        }
+    }
+
+    /**
+     * Release the slot of the pdu returned by {@link #peekData()}. Must only be called by the consumer thread.
+     */
+    public void advance() {
+        long currentHead = head.get();
+        pdus[(int) currentHead & mask] = null;
+        head.lazySet(currentHead + 1);
+    }
+
+    /**
+     * @return number of pdus waiting in the ring
+     */
+    public int size() {
+        return (int) (tail.get() - head.get());
+    }
+
+    /**
+     * @return number of slots
+     */
+    public int capacity() {
+        return mask + 1;
+    }
+
+    /**
+     * @return number of pdus dropped because the ring was full
+     */
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+}
@@ -0,0 +1,188 @@
+/*******************************************************************************
+ * Copyright (C) Her Majesty the Queen in Right of Canada, 
+ * as represented by the Minister of National Defence, 2018
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package de.fraunhofer.iosb.tc_lib.dis;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import edu.nps.moves.dis.Pdu;
+import edu.nps.moves.disenum.PduType;
+import edu.nps.moves.disutil.PduFactory;
+
+/**
+ * Append-only file receiving the pdus evicted from memory by a {@link RetentionPolicy}.
+ * <p>
+ * Each record holds the pdu type (1 byte), the reception time in milliseconds
+ * (8 bytes), the pdu length (4 bytes) and the pdu in IEEE 1278.1 format.
+ * <p>
+ * Only the flush of the buffered records holds the lock taken by {@link #append(ReceivedPdu)}.
+ * The file is then read through its own stream up to the length recorded at
+ * the flush, so a reader never stalls the thread evicting into the file.
+ */
+public class PduSpillFile {
+
+    private static Logger logger = LoggerFactory.getLogger(PduSpillFile.class);
+
+    /**
+     * Pdu type, reception time and pdu length preceding each pdu
+     */
+    private static final int RECORD_HEADER_SIZE = 1 + 8 + 4;
+
+    private final File file;
+    private DataOutputStream output;
+
+    /**
+     * Bytes written since the file was opened or truncated. Guarded by this.
+     */
+    private long written = 0;
+
+    /**
+     * Incremented on each truncation, so that a read overlapping one is discarded. Guarded by this.
+     */
+    private long generation = 0;
+
+    /**
+     * Open the file, truncating any previous content
+     * @param file the file to write
+     * @throws IOException if the file can not be created
+     */
+    public PduSpillFile(File file) throws IOException {
+        this.file = file;
+        this.output = open();
+    }
+
+    private DataOutputStream open() throws IOException {
+        return new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+    }
+
+    /**
+     * Append an evicted pdu. A write error is logged and the pdu is lost.
+     * @param receivedPdu the evicted pdu
+     */
+    public synchronized void append(ReceivedPdu receivedPdu) {
+        if (output == null) {
+            return;
+        }
+        try {
+            byte[] data = receivedPdu.getBytes();
+            output.writeByte(receivedPdu.getPduType());
+            output.writeLong(receivedPdu.getReceiveTime());
+            output.writeInt(data.length);
+            output.write(data);
+            written += RECORD_HEADER_SIZE + data.length;
+        } catch (IOException e) {
+            logger.error("Error while spilling pdu to {}", file, e);
+        }
+    }
+
+    /**
+     * Read back the spilled pdus of one type
+     * @param type the pdu type to read
+     * @return the spilled pdus of this type, in eviction order
+     * @throws IOException if the file can not be read
+     */
+    public List<Pdu> read(PduType type) throws IOException {
+        List<Pdu> pduList = new ArrayList<>();
+        long length;
+        long readGeneration;
+        synchronized (this) {
+            if (output == null) {
+                return pduList;
+            }
+            output.flush();
+            length = written;
+            readGeneration = generation;
+        }
+        PduFactory pduFactory = new PduFactory();
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            long position = 0;
+            while (position + RECORD_HEADER_SIZE <= length) {
+                int recordType = input.readUnsignedByte();
+                input.readLong();
+                int dataLength = input.readInt();
+                if (dataLength < 0 || dataLength > length - position - RECORD_HEADER_SIZE) {
+                    // misaligned by a concurrent clear, checked below
+                    break;
+                }
+                byte[] data = new byte[dataLength];
+                input.readFully(data);
+                position += RECORD_HEADER_SIZE + dataLength;
+                if (recordType == type.value) {
+                    Pdu pdu = null;
+                    try {
+                        pdu = pduFactory.createPdu(data);
+                    } catch (RuntimeException e) {
+                        logger.debug("Unreadable pdu in {}", file, e);
+                    }
+                    if (pdu != null) {
+                        pduList.add(pdu);
+                    }
+                }
+            }
+        } catch (EOFException e) {
+            // truncated by a concurrent clear, checked below
+        }
+        synchronized (this) {
+            if (generation != readGeneration) {
+                // the file was truncated while reading, the pdus read were dropped
+                pduList.clear();
+            }
+        }
+        return pduList;
+    }
+
+    /**
+     * Drop every spilled pdu
+     */
+    public synchronized void clear() {
+        try {
+            close();
+            output = open();
+            written = 0;
+            generation++;
+        } catch (IOException e) {
+            logger.error("Error while truncating {}", file, e);
+        }
+    }
+
+    /**
+     * Flush and close the file, the spilled pdus can not be read anymore
+     */
+    public synchronized void close() {
+        if (output == null) {
+            return;
+        }
+        try {
+            output.close();
+        } catch (IOException e) {
+            logger.error("Error while closing {}", file, e);
+        }
+        output = null;
+    }
+}
@@ -0,0 +1,217 @@
+/*******************************************************************************
+ * Copyright (C) Her Majesty the Queen in Right of Canada, 
+ * as represented by the Minister of National Defence, 2018
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package de.fraunhofer.iosb.tc_lib.dis;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import edu.nps.moves.dis.Pdu;
+import edu.nps.moves.disenum.PduType;
+
+/**
+ * Received pdus partitioned by pdu type.
+ * <p>
+ * Each pdu type has its own {@link PduLog}, so reading the pdus of one type
+ * costs the number of pdus of that type only. The store is filled by a single
+ * writer (the receiver thread) and read without lock, the writer is never
+ * blocked by a reader.
+ * <p>
+ * The writer enforces the {@link RetentionPolicy}: once a bound is exceeded
+ * the oldest pdus, all types considered, are evicted and handed to the spill
+ * file if there is one.
+ */
+public class PduStore {
+
+    /**
+     * The pdu type is an unsigned byte in the pdu header
+     */
+    private static final int PDU_TYPE_COUNT = 256;
+
+    private final RetentionPolicy retentionPolicy;
+
+    private final PduSpillFile spillFile;
+
+    private volatile Generation generation = new Generation();
+
+    /**
+     * Store keeping every pdu in memory
+     */
+    public PduStore() {
+        this(RetentionPolicy.UNLIMITED, null);
+    }
+
+    /**
+     * @param retentionPolicy bounds on the pdus kept in memory
+     * @param spillFile file receiving the evicted pdus, null to discard them
+     */
+    public PduStore(RetentionPolicy retentionPolicy, PduSpillFile spillFile) {
+        this.retentionPolicy = retentionPolicy;
+        this.spillFile = spillFile;
+    }
+
+    /**
+     * Store a pdu in the log of its type. Must only be called by the writer thread.
+     * @param receivedPdu the received pdu
+     */
+    public void add(ReceivedPdu receivedPdu) {
+        if (receivedPdu == null) {
+            return;
+        }
+        Generation current = generation;
+        current.log(receivedPdu.getPduType()).append(receivedPdu);
+        current.count++;
+        current.bytes += receivedPdu.getLength();
+
+        if (retentionPolicy.isBounded()) {
+            enforceRetention(current, receivedPdu.getReceiveTime());
+        }
+    }
+
+    private void enforceRetention(Generation current, long now) {
+        while (true) {
+            PduLog<ReceivedPdu> oldestLog = current.oldestLog();
+            if (oldestLog == null) {
+                return;
+            }
+            ReceivedPdu oldest = oldestLog.peekOldest();
+            if (!retentionPolicy.isExceeded(current.count, current.bytes)
+                    && !retentionPolicy.isExpired(oldest.getReceiveTime(), now)) {
+                return;
+            }
+            oldestLog.evictOldest();
+            current.count--;
+            current.bytes -= oldest.getLength();
+            if (spillFile != null) {
+                spillFile.append(oldest);
+            }
+        }
+    }
+
+    /**
+     * @param type the pdu type to read
+     * @param pduClass the open-dis class matching this pdu type
+     * @param <T> the open-dis class matching this pdu type
+     * @return every pdu of this type kept in memory, in reception order, decoded if not done yet
+     */
+    public <T extends Pdu> List<T> getPdus(PduType type, Class<T> pduClass) {
+        PduLog<ReceivedPdu> log = generation.logs.get(type.value);
+        if (log == null) {
+            return new ArrayList<>();
+        }
+        List<T> pduList = new ArrayList<>(log.size());
+        log.copyTo(pduList, receivedPdu -> pduClass.cast(receivedPdu.getPdu()));
+        return pduList;
+    }
+
+    /**
+     * @param type the pdu type to read
+     * @return every pdu of this type kept in memory, in reception order, not decoded
+     */
+    public List<ReceivedPdu> getReceivedPdus(PduType type) {
+        PduLog<ReceivedPdu> log = generation.logs.get(type.value);
+        if (log == null) {
+            return new ArrayList<>();
+        }
+        List<ReceivedPdu> receivedPduList = new ArrayList<>(log.size());
+        log.copyTo(receivedPduList, receivedPdu -> receivedPdu);
+        return receivedPduList;
+    }
+
+    /**
+     * @param type the pdu type to read
+     * @param fromSequence lowest reception sequence number read
+     * @param toSequence sequence number above the highest one read
+     * @return the pdus of this type kept in memory within this sequence range, in reception order, not decoded
+     */
+    public List<ReceivedPdu> getReceivedPdus(PduType type, long fromSequence, long toSequence) {
+        PduLog<ReceivedPdu> log = generation.logs.get(type.value);
+        List<ReceivedPdu> receivedPduList = new ArrayList<>();
+        if (log != null) {
+            log.copyRange(ReceivedPdu::getSequence, fromSequence, toSequence, receivedPduList, receivedPdu -> receivedPdu);
+        }
+        return receivedPduList;
+    }
+
+    /**
+     * @return number of pdus kept in memory
+     */
+    public long getCount() {
+        return generation.count;
+    }
+
+    /**
+     * @return total size in bytes of the pdus kept in memory
+     */
+    public long getBytes() {
+        return generation.bytes;
+    }
+
+    /**
+     * Drop every pdu kept in memory. A pdu stored concurrently is either
+     * kept or dropped, never half-visible. The spill file is left as is.
+     */
+    public void clear() {
+        generation = new Generation();
+    }
+
+    /**
+     * Logs and retention counters since the last clear
+     */
+    private static final class Generation {
+
+        private final AtomicReferenceArray<PduLog<ReceivedPdu>> logs = new AtomicReferenceArray<>(PDU_TYPE_COUNT);
+
+        /**
+         * Pdu types having a log, to avoid scanning every type on eviction
+         */
+        private int[] activeTypes = new int[0];
+
+        private volatile long count = 0;
+
+        private volatile long bytes = 0;
+
+        private PduLog<ReceivedPdu> log(int type) {
+            PduLog<ReceivedPdu> log = logs.get(type);
+            if (log == null) {
+                log = new PduLog<>();
+                logs.set(type, log);
+                activeTypes = Arrays.copyOf(activeTypes, activeTypes.length + 1);
+                activeTypes[activeTypes.length - 1] = type;
+            }
+            return log;
+        }
+
+        /**
+         * @return the log holding the oldest pdu, null if every log is empty
+         */
+        private PduLog<ReceivedPdu> oldestLog() {
+            PduLog<ReceivedPdu> oldestLog = null;
+            long oldestTime = Long.MAX_VALUE;
+            for (int type : activeTypes) {
+                PduLog<ReceivedPdu> log = logs.get(type);
+                ReceivedPdu candidate = log.peekOldest();
+                if (candidate != null && candidate.getReceiveTime() < oldestTime) {
+                    oldestTime = candidate.getReceiveTime();
+                    oldestLog = log;
+                }
+            }
+            return oldestLog;
+        }
+    }
+}
@@ -0,0 +1,169 @@
+/*******************************************************************************
+ * Copyright (C) Her Majesty the Queen in Right of Canada, 
+ * as represented by the Minister of National Defence, 2018
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package de.fraunhofer.iosb.tc_lib.dis;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import edu.nps.moves.dis.Pdu;
+import edu.nps.moves.disenum.PduType;
+
+/**
+ * Push delivery of the pdus of one type to a consumer, created by
+ * {@link DisManager#subscribe(PduType, Consumer, Predicate)}.
+ * <p>
+ * The decode stage only offers each pdu to the bounded queue of the
+ * subscription; decoding, filtering and the consumer run on the thread of the
+ * subscription. A slow consumer therefore only fills its own queue, and the
+ * pdus offered while it is full are dropped and counted.
+ */
+public class PduSubscription implements PduListener {
+
+    private static Logger logger = LoggerFactory.getLogger(PduSubscription.class);
+
+    /**
+     * Pdus queued for a subscriber when no capacity is specified
+     */
+    public static final int DEFAULT_QUEUE_CAPACITY = 1024;
+
+    private static final int DRAIN_BATCH_SIZE = 64;
+
+    private final DisReceiver receiver;
+    private final int pduType;
+    private final Consumer<? super Pdu> consumer;
+    private final Predicate<? super Pdu> filter;
+    private final BlockingQueue<ReceivedPdu> queue;
+    private final Thread thread;
+
+    private final AtomicLong deliveredCount = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+
+    private volatile boolean cancelled = false;
+
+    /**
+     * @param receiver the receiver whose pdus are delivered
+     * @param type the pdu type to deliver
+     * @param consumer called once for each delivered pdu, in reception order within an entity
+     * @param filter condition on the pdus to deliver, null to deliver every pdu of this type
+     * @param queueCapacity maximum number of pdus waiting for the consumer
+     */
+    public PduSubscription(DisReceiver receiver, PduType type, Consumer<? super Pdu> consumer, Predicate<? super Pdu> filter,
+            int queueCapacity) {
+        this.receiver = receiver;
+        this.pduType = type.value;
+        this.consumer = consumer;
+        this.filter = filter;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.thread = new Thread(this::dispatch, "DisSubscriber-" + type.name());
+        this.thread.setDaemon(true);
+    }
+
+    /**
+     * Start the delivery of the pdus stored from now on
+     */
+    public void start() {
+        thread.start();
+        receiver.addListener(this);
+    }
+
+    @Override
+    public void pduStored(ReceivedPdu receivedPdu) {
+        if (receivedPdu.getPduType() != pduType || cancelled) {
+            return;
+        }
+        if (!queue.offer(receivedPdu)) {
+            droppedCount.incrementAndGet();
+        }
+    }
+
+    private void dispatch() {
+        List<ReceivedPdu> batch = new ArrayList<>(DRAIN_BATCH_SIZE);
+        try {
+            while (!cancelled) {
+                batch.add(queue.take());
+                queue.drainTo(batch, DRAIN_BATCH_SIZE - 1);
+                for (ReceivedPdu receivedPdu : batch) {
+                    deliver(receivedPdu);
+                }
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            // cancelled
+        }
+    }
+
+    private void deliver(ReceivedPdu receivedPdu) {
+        if (cancelled) {
+            return;
+        }
+        Pdu pdu = receivedPdu.getPdu();
+        if (pdu == null) {
+            return;
+        }
+        try {
+            if (filter == null || filter.test(pdu)) {
+                consumer.accept(pdu);
+                deliveredCount.incrementAndGet();
+            }
+        } catch (RuntimeException e) {
+            logger.error("Subscriber failed on a pdu of type :{}", pduType, e);
+        }
+    }
+
+    /**
+     * Stop the delivery, the pdus still queued are discarded
+     */
+    public void cancel() {
+        cancelled = true;
+        receiver.removeListener(this);
+        thread.interrupt();
+        queue.clear();
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * @return number of pdus handed to the consumer
+     */
+    public long getDeliveredCount() {
+        return deliveredCount.get();
+    }
+
+    /**
+     * @return number of pdus dropped because the queue was full
+     */
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    /**
+     * @return number of pdus waiting for the consumer
+     */
+    public int getQueueSize() {
+        return queue.size();
+    }
+}
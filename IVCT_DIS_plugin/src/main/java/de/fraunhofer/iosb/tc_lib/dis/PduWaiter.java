@@ -0,0 +1,137 @@
+/*******************************************************************************
+ * Copyright (C) Her Majesty the Queen in Right of Canada, 
+ * as represented by the Minister of National Defence, 2018
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package de.fraunhofer.iosb.tc_lib.dis;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import edu.nps.moves.dis.Pdu;
+import edu.nps.moves.disenum.PduType;
+
+/**
+ * Collect the pdus of one type matching a predicate until a number of them is reached.
+ * <p>
+ * When keyed by entity, the pdus of the same entity count once and the latest one,
+ * by reception sequence, is kept, otherwise every pdu counts. A pdu seen twice,
+ * once while scanning the store and once through {@link #pduStored(ReceivedPdu)},
+ * is counted once. A pdu that fails to decode or to be tested does not match.
+ *
+ * @param <T> the open-dis class matching the pdu type
+ */
+public class PduWaiter<T extends Pdu> implements PduListener {
+
+    private static Logger logger = LoggerFactory.getLogger(PduWaiter.class);
+
+    private final int pduType;
+    private final Class<T> pduClass;
+    private final Predicate<? super T> predicate;
+    private final int count;
+    private final boolean keyedByEntity;
+
+    private final Map<Long, Match<T>> matches = new LinkedHashMap<>();
+    private final CountDownLatch reached = new CountDownLatch(1);
+
+    /**
+     * @param type the pdu type to wait for
+     * @param pduClass the open-dis class matching this pdu type
+     * @param predicate condition on the pdus to collect, null to accept every pdu of this type
+     * @param count number of pdus, or entities if keyed by entity, to wait for
+     * @param keyedByEntity true to count the pdus of the same entity once
+     */
+    public PduWaiter(PduType type, Class<T> pduClass, Predicate<? super T> predicate, int count, boolean keyedByEntity) {
+        this.pduType = type.value;
+        this.pduClass = pduClass;
+        this.predicate = predicate;
+        this.count = count;
+        this.keyedByEntity = keyedByEntity;
+        if (count <= 0) {
+            reached.countDown();
+        }
+    }
+
+    @Override
+    public void pduStored(ReceivedPdu receivedPdu) {
+        if (receivedPdu.getPduType() != pduType) {
+            return;
+        }
+        T pdu;
+        try {
+            pdu = pduClass.cast(receivedPdu.getPdu());
+            if (pdu == null || (predicate != null && !predicate.test(pdu))) {
+                return;
+            }
+        } catch (RuntimeException e) {
+            logger.warn("Pdu {} not matched, it could not be decoded or tested", receivedPdu.getSequence(), e);
+            return;
+        }
+        long key = keyedByEntity ? receivedPdu.getEntityKey() : receivedPdu.getSequence();
+        synchronized (matches) {
+            // the scan of the store and the notifications may come in any order
+            Match<T> match = matches.get(key);
+            if (match == null || receivedPdu.getSequence() > match.sequence) {
+                matches.put(key, new Match<>(receivedPdu.getSequence(), pdu));
+            }
+            if (matches.size() >= count) {
+                reached.countDown();
+            }
+        }
+    }
+
+    /**
+     * @param timeout maximum time to wait in milliseconds
+     * @return true if the count was reached before the timeout
+     * @throws InterruptedException if the waiting thread is interrupted
+     */
+    public boolean await(long timeout) throws InterruptedException {
+        return reached.await(timeout, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return the pdus collected yet, in the order they were first matched
+     */
+    public List<T> getMatches() {
+        synchronized (matches) {
+            List<T> pdus = new ArrayList<>(matches.size());
+            for (Match<T> match : matches.values()) {
+                pdus.add(match.pdu);
+            }
+            return pdus;
+        }
+    }
+
+    /**
+     * A matching pdu with its reception sequence
+     */
+    private static final class Match<T> {
+
+        private final long sequence;
+        private final T pdu;
+
+        private Match(long sequence, T pdu) {
+            this.sequence = sequence;
+            this.pdu = pdu;
+        }
+    }
+}
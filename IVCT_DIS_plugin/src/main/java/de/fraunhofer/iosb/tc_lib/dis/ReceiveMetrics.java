@@ -0,0 +1,233 @@
+/*******************************************************************************
+ * Copyright (C) Her Majesty the Queen in Right of Canada, 
+ * as represented by the Minister of National Defence, 2018
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package de.fraunhofer.iosb.tc_lib.dis;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import edu.nps.moves.disenum.PduType;
+import edu.nps.moves.siso.EnumNotFoundException;
+
+/**
+ * Counters and latency histograms of the receive path of a {@link DisReceiver}.
+ * <p>
+ * Every counter is a {@link LongAdder} or an atomic array slot, so the receiver
+ * and decode threads never contend on a lock. The receiver only records into
+ * these metrics when they are enabled, otherwise the receive path does not
+ * even read the clock.
+ */
+public class ReceiveMetrics implements ReceiveMetricsMXBean {
+
+    private static final int PDU_TYPE_COUNT = 256;
+
+    private static final String[] PROC_NET_UDP = { "/proc/net/udp", "/proc/net/udp6" };
+
+    private final int port;
+
+    private final LongAdder datagramCount = new LongAdder();
+    private final LongAdder byteCount = new LongAdder();
+    private final LongAdder pduCount = new LongAdder();
+    private final LongAdder malformedDatagramCount = new LongAdder();
+    private final LongAdder ringDropCount = new LongAdder();
+    private final AtomicLongArray pduCountByType = new AtomicLongArray(PDU_TYPE_COUNT);
+
+    private final LatencyHistogram queueLatency = new LatencyHistogram();
+    private final LatencyHistogram storeLatency = new LatencyHistogram();
+    private final LatencyHistogram decodeLatency = new LatencyHistogram();
+
+    private volatile long startNanos = System.nanoTime();
+
+    /**
+     * @param port the listening port, used to find the kernel drop counter of the socket
+     */
+    public ReceiveMetrics(int port) {
+        this.port = port;
+    }
+
+    /**
+     * @param length size of the received datagram in bytes
+     */
+    public void datagramReceived(int length) {
+        datagramCount.increment();
+        byteCount.add(length);
+    }
+
+    /**
+     * @param pduType type of a pdu split from a datagram
+     */
+    public void pduReceived(int pduType) {
+        pduCount.increment();
+        pduCountByType.incrementAndGet(pduType);
+    }
+
+    public void malformedDatagram() {
+        malformedDatagramCount.increment();
+    }
+
+    public void ringDropped() {
+        ringDropCount.increment();
+    }
+
+    public void recordQueueLatency(long nanos) {
+        queueLatency.record(nanos);
+    }
+
+    public void recordStoreLatency(long nanos) {
+        storeLatency.record(nanos);
+    }
+
+    public void recordDecodeLatency(long nanos) {
+        decodeLatency.record(nanos);
+    }
+
+    @Override
+    public long getDatagramCount() {
+        return datagramCount.sum();
+    }
+
+    @Override
+    public long getByteCount() {
+        return byteCount.sum();
+    }
+
+    @Override
+    public long getPduCount() {
+        return pduCount.sum();
+    }
+
+    @Override
+    public long getMalformedDatagramCount() {
+        return malformedDatagramCount.sum();
+    }
+
+    @Override
+    public Map<String, Long> getPduCountByType() {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        for (int type = 0; type < PDU_TYPE_COUNT; type++) {
+            long count = pduCountByType.get(type);
+            if (count > 0) {
+                counts.put(pduTypeName(type), count);
+            }
+        }
+        return counts;
+    }
+
+    private static String pduTypeName(int type) {
+        try {
+            return PduType.getEnumerationForValue(type).name();
+        } catch (EnumNotFoundException e) {
+            return String.valueOf(type);
+        }
+    }
+
+    @Override
+    public long getRingDropCount() {
+        return ringDropCount.sum();
+    }
+
+    /**
+     * Read the drop counter of the kernel for the socket bound to the listening port.
+     * Only available on Linux, where it counts the datagrams lost because the socket
+     * receive buffer was full.
+     */
+    @Override
+    public long getSocketDropCount() {
+        String localPort = String.format(Locale.ROOT, ":%04X", port);
+        long drops = -1;
+        for (String fileName : PROC_NET_UDP) {
+            File file = new File(fileName);
+            if (!file.canRead()) {
+                continue;
+            }
+            try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+                reader.readLine(); // header
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    String[] fields = line.trim().split("\\s+");
+                    if (fields.length > 2 && fields[1].endsWith(localPort)) {
+                        drops = Math.max(drops, 0) + Long.parseLong(fields[fields.length - 1]);
+                    }
+                }
+            } catch (IOException | NumberFormatException e) {
+                // best effort, the counter stays unknown
+            }
+        }
+        return drops;
+    }
+
+    @Override
+    public double getDatagramRate() {
+        return getDatagramCount() / elapsedSeconds();
+    }
+
+    @Override
+    public double getByteRate() {
+        return getByteCount() / elapsedSeconds();
+    }
+
+    private double elapsedSeconds() {
+        return Math.max(1e-9, (System.nanoTime() - startNanos) / 1e9);
+    }
+
+    @Override
+    public Map<String, Long> getQueueLatency() {
+        return queueLatency.getSummary();
+    }
+
+    @Override
+    public Map<String, Long> getStoreLatency() {
+        return storeLatency.getSummary();
+    }
+
+    @Override
+    public Map<String, Long> getDecodeLatency() {
+        return decodeLatency.getSummary();
+    }
+
+    @Override
+    public void reset() {
+        datagramCount.reset();
+        byteCount.reset();
+        pduCount.reset();
+        malformedDatagramCount.reset();
+        ringDropCount.reset();
+        for (int type = 0; type < PDU_TYPE_COUNT; type++) {
+            pduCountByType.set(type, 0);
+        }
+        queueLatency.reset();
+        storeLatency.reset();
+        decodeLatency.reset();
+        startNanos = System.nanoTime();
+    }
+
+    @Override
+    public String toString() {
+        return "ReceiveMetrics [port=" + port + ", datagrams=" + getDatagramCount() + ", bytes=" + getByteCount()
+            + ", pdus=" + getPduCount() + ", malformedDatagrams=" + getMalformedDatagramCount()
+            + ", ringDrops=" + getRingDropCount() + ", socketDrops=" + getSocketDropCount()
+            + String.format(Locale.ROOT, ", datagramRate=%.1f/s, byteRate=%.1f/s", getDatagramRate(), getByteRate())
+            + ", pduCountByType=" + getPduCountByType() + ", queueLatency=" + queueLatency
+            + ", storeLatency=" + storeLatency + ", decodeLatency=" + decodeLatency + "]";
+    }
+}
@@ -0,0 +1,72 @@
+/*******************************************************************************
+ * Copyright (C) Her Majesty the Queen in Right of Canada, 
+ * as represented by the Minister of National Defence, 2018
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package de.fraunhofer.iosb.tc_lib.dis;
+
+import java.util.Map;
+
+/**
+ * JMX view of the {@link ReceiveMetrics} of a {@link DisReceiver}.
+ */
+public interface ReceiveMetricsMXBean {
+
+    long getDatagramCount();
+
+    long getByteCount();
+
+    long getPduCount();
+
+    /**
+     * @return number of datagrams whose tail could not be split into pdus
+     */
+    long getMalformedDatagramCount();
+
+    /**
+     * @return number of pdus received for each pdu type received at least once
+     */
+    Map<String, Long> getPduCountByType();
+
+    /**
+     * @return number of pdus dropped because a decode worker could not keep up
+     */
+    long getRingDropCount();
+
+    /**
+     * @return number of datagrams dropped by the kernel on the listening port, -1 if unknown
+     */
+    long getSocketDropCount();
+
+    double getDatagramRate();
+
+    double getByteRate();
+
+    /**
+     * @return latency from reception to pick up by the decode stage
+     */
+    Map<String, Long> getQueueLatency();
+
+    /**
+     * @return latency from pick up by the decode stage to the pdu being stored and notified
+     */
+    Map<String, Long> getStoreLatency();
+
+    /**
+     * @return time spent unmarshalling the pdus into open-dis objects
+     */
+    Map<String, Long> getDecodeLatency();
+
+    void reset();
+}
@@ -0,0 +1,177 @@
+/*******************************************************************************
+ * Copyright (C) Her Majesty the Queen in Right of Canada, 
+ * as represented by the Minister of National Defence, 2018
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package de.fraunhofer.iosb.tc_lib.dis;
+
+import edu.nps.moves.dis.Pdu;
+import edu.nps.moves.disutil.PduFactory;
+
+/**
+ * A pdu kept by the {@link PduStore} in its IEEE 1278.1 format.
+ * <p>
+ * Only the pdu header and the first entity identifier are read at reception.
+ * The open-dis {@link Pdu} is built on the first call to {@link #getPdu()} and
+ * then cached, so pdus that are never inspected are never unmarshalled.
+ */
+public class ReceivedPdu {
+
+    /**
+     * Offset of the first entity identifier, right after the pdu header. It identifies
+     * the entity of an EntityStatePdu and the firing entity of a FirePdu or a DetonationPdu.
+     */
+    private static final int ENTITY_ID_OFFSET = DisReceiver.PDU_HEADER_SIZE;
+
+    private static final int ENTITY_ID_SIZE = 6;
+
+    /**
+     * Entity key of a pdu too short to hold an entity identifier
+     */
+    public static final long NO_ENTITY = -1L;
+
+    private static final ThreadLocal<PduFactory> PDU_FACTORY = ThreadLocal.withInitial(PduFactory::new);
+
+    private final byte[] data;
+    private final long receiveTime;
+    private final long sequence;
+    private final int pduType;
+    private final long entityKey;
+
+    /**
+     * Metrics recording the decode time, null if disabled
+     */
+    private final ReceiveMetrics metrics;
+
+    private volatile Pdu pdu;
+
+    /**
+     * @param data the pdu in IEEE 1278.1 format, exactly one pdu long; it must not be modified afterward
+     * @param receiveTime reception time in milliseconds
+     */
+    public ReceivedPdu(byte[] data, long receiveTime) {
+        this(data, receiveTime, 0, null);
+    }
+
+    /**
+     * @param data the pdu in IEEE 1278.1 format, exactly one pdu long; it must not be modified afterward
+     * @param receiveTime reception time in milliseconds
+     * @param sequence reception sequence number, orders the pdus across the decode shards
+     * @param metrics metrics recording the decode time, null if disabled
+     */
+    public ReceivedPdu(byte[] data, long receiveTime, long sequence, ReceiveMetrics metrics) {
+        this.data = data;
+        this.metrics = metrics;
+        this.receiveTime = receiveTime;
+        this.sequence = sequence;
+        this.pduType = data[2] & 0xFF;
+        this.entityKey = readEntityKey(data);
+    }
+
+    /**
+     * @param data the pdu in IEEE 1278.1 format
+     * @return the first entity identifier of the pdu packed with {@link EntityStateTable#key(int, int, int)},
+     * {@link #NO_ENTITY} if the pdu is too short
+     */
+    public static long readEntityKey(byte[] data) {
+        if (data.length < ENTITY_ID_OFFSET + ENTITY_ID_SIZE) {
+            return NO_ENTITY;
+        }
+        return EntityStateTable.key(readUnsignedShort(data, ENTITY_ID_OFFSET),
+                readUnsignedShort(data, ENTITY_ID_OFFSET + 2), readUnsignedShort(data, ENTITY_ID_OFFSET + 4));
+    }
+
+    private static int readUnsignedShort(byte[] data, int offset) {
+        return ((data[offset] & 0xFF) << 8) | (data[offset + 1] & 0xFF);
+    }
+
+    /**
+     * Decode the pdu on first call.
+     * @return the decoded pdu, null if open-dis does not support this pdu type
+     */
+    public Pdu getPdu() {
+        Pdu decoded = pdu;
+        if (decoded == null) {
+            synchronized (this) {
+                decoded = pdu;
+                if (decoded == null) {
+                    long start = metrics != null ? System.nanoTime() : 0;
+                    decoded = PDU_FACTORY.get().createPdu(data);
+                    if (metrics != null) {
+                        metrics.recordDecodeLatency(System.nanoTime() - start);
+                    }
+                    pdu = decoded;
+                }
+            }
+        }
+        return decoded;
+    }
+
+    /**
+     * @return the pdu type from the pdu header
+     */
+    public int getPduType() {
+        return pduType;
+    }
+
+    /**
+     * @return the exercise identifier from the pdu header
+     */
+    public int getExerciseId() {
+        return data[1] & 0xFF;
+    }
+
+    /**
+     * @return the timestamp from the pdu header
+     */
+    public long getTimestamp() {
+        return ((long) readUnsignedShort(data, 4) << 16) | readUnsignedShort(data, 6);
+    }
+
+    /**
+     * @return the first entity identifier of the pdu packed with {@link EntityStateTable#key(int, int, int)},
+     * {@link #NO_ENTITY} if the pdu is too short
+     */
+    public long getEntityKey() {
+        return entityKey;
+    }
+
+    /**
+     * @return reception time in milliseconds
+     */
+    public long getReceiveTime() {
+        return receiveTime;
+    }
+
+    /**
+     * @return reception sequence number
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * @return size of the pdu in bytes
+     */
+    public int getLength() {
+        return data.length;
+    }
+
+    /**
+     * @return the pdu in IEEE 1278.1 format, must not be modified
+     */
+    public byte[] getBytes() {
+        return data;
+    }
+}
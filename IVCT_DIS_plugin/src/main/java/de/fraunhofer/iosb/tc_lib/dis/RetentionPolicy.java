@@ -0,0 +1,113 @@
+/*******************************************************************************
+ * Copyright (C) Her Majesty the Queen in Right of Canada, 
+ * as represented by the Minister of National Defence, 2018
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package de.fraunhofer.iosb.tc_lib.dis;
+
+import java.io.File;
+
+/**
+ * Bounds on the pdus kept in memory by the {@link DisReceiver}.
+ * <p>
+ * When a bound is exceeded the oldest pdus are evicted, and appended to the
+ * spill file if one is configured. A bound of zero or less means unlimited.
+ */
+public class RetentionPolicy {
+
+    /**
+     * Keep every pdu in memory, the behavior when no policy is configured
+     */
+    public static final RetentionPolicy UNLIMITED = new RetentionPolicy(0, 0, 0, null);
+
+    private final long maxCount;
+    private final long maxBytes;
+    private final long maxAgeMillis;
+    private final File spillFile;
+
+    /**
+     * @param maxCount maximum number of pdus kept in memory
+     * @param maxBytes maximum total size in bytes of the pdus kept in memory
+     * @param maxAgeMillis maximum age in milliseconds of the pdus kept in memory
+     * @param spillFile file receiving the evicted pdus, null to discard them
+     */
+    public RetentionPolicy(long maxCount, long maxBytes, long maxAgeMillis, File spillFile) {
+        this.maxCount = maxCount;
+        this.maxBytes = maxBytes;
+        this.maxAgeMillis = maxAgeMillis;
+        this.spillFile = spillFile;
+    }
+
+    public long getMaxCount() {
+        return maxCount;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public long getMaxAgeMillis() {
+        return maxAgeMillis;
+    }
+
+    public File getSpillFile() {
+        return spillFile;
+    }
+
+    /**
+     * @return true if at least one bound is set
+     */
+    public boolean isBounded() {
+        return maxCount > 0 || maxBytes > 0 || maxAgeMillis > 0;
+    }
+
+    /**
+     * @param count number of pdus in memory
+     * @param bytes total size of the pdus in memory
+     * @return true if the count or the size bound is exceeded
+     */
+    public boolean isExceeded(long count, long bytes) {
+        return (maxCount > 0 && count > maxCount) || (maxBytes > 0 && bytes > maxBytes);
+    }
+
+    /**
+     * @param receiveTime reception time of a pdu in milliseconds
+     * @param now current time in milliseconds
+     * @return true if the pdu is older than the time window
+     */
+    public boolean isExpired(long receiveTime, long now) {
+        return maxAgeMillis > 0 && now - receiveTime > maxAgeMillis;
+    }
+
+    /**
+     * @param parts number of stores sharing this policy
+     * @return the policy of each store, the count and size bounds split evenly
+     */
+    public RetentionPolicy divide(int parts) {
+        if (parts <= 1 || !isBounded()) {
+            return this;
+        }
+        return new RetentionPolicy(divideBound(maxCount, parts), divideBound(maxBytes, parts), maxAgeMillis, spillFile);
+    }
+
+    private static long divideBound(long bound, int parts) {
+        return bound > 0 ? Math.max(1, bound / parts) : bound;
+    }
+
+    @Override
+    public String toString() {
+        return "RetentionPolicy [maxCount=" + maxCount + ", maxBytes=" + maxBytes + ", maxAgeMillis=" + maxAgeMillis
+            + ", spillFile=" + spillFile + "]";
+    }
+}
@@ -0,0 +1,128 @@
+/*******************************************************************************
+ * Copyright (C) Her Majesty the Queen in Right of Canada, 
+ * as represented by the Minister of National Defence, 2018
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package de.fraunhofer.iosb.tc_lib.dis;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * One destination of the {@link DisSender}: a unicast, broadcast or multicast
+ * address with its own channel, so that a failing destination does not
+ * prevent the others from receiving the pdus.
+ */
+public class SendDestination {
+
+    private static Logger logger = LoggerFactory.getLogger(SendDestination.class);
+
+    /**
+     * One send error out of this many is logged, a destination down fails every send
+     */
+    private static final int ERROR_LOG_INTERVAL = 1000;
+
+    private final InetSocketAddress target;
+
+    private final DatagramChannel channel;
+
+    private final AtomicLong datagramCount = new AtomicLong();
+
+    private final AtomicLong byteCount = new AtomicLong();
+
+    private final AtomicLong errorCount = new AtomicLong();
+
+    /**
+     * @param host hostname or textual representation of the address to send to
+     * @param port the port to send to
+     * @throws IOException if the host is malformed or the channel could not be opened
+     */
+    public SendDestination(String host, int port) throws IOException {
+        this.target = new InetSocketAddress(InetAddress.getByName(host), port);
+        this.channel = DatagramChannel.open();
+        channel.socket().setBroadcast(true);
+    }
+
+    /**
+     * Send a datagram, an error is counted and logged but not thrown
+     * @param datagram the datagram between its position and limit, left unchanged
+     * @return true if the datagram was sent
+     */
+    public boolean send(ByteBuffer datagram) {
+        int position = datagram.position();
+        try {
+            int sent = channel.send(datagram, target);
+            datagramCount.incrementAndGet();
+            byteCount.addAndGet(sent);
+            return true;
+        } catch (IOException e) {
+            long errors = errorCount.incrementAndGet();
+            if (errors % ERROR_LOG_INTERVAL == 1) {
+                logger.error("Error while sending to {}, {} errors so far", target, errors, e);
+            }
+            return false;
+        } finally {
+            datagram.position(position);
+        }
+    }
+
+    public InetSocketAddress getTarget() {
+        return target;
+    }
+
+    /**
+     * @return number of datagrams sent to this destination
+     */
+    public long getDatagramCount() {
+        return datagramCount.get();
+    }
+
+    /**
+     * @return number of bytes sent to this destination
+     */
+    public long getByteCount() {
+        return byteCount.get();
+    }
+
+    /**
+     * @return number of datagrams that could not be sent to this destination
+     */
+    public long getErrorCount() {
+        return errorCount.get();
+    }
+
+    /**
+     * Close the channel of this destination
+     */
+    public void close() {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            logger.warn("Error while closing the channel to {}", target, e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "SendDestination [target=" + target + ", datagramCount=" + datagramCount + ", byteCount=" + byteCount
+            + ", errorCount=" + errorCount + "]";
+    }
+}
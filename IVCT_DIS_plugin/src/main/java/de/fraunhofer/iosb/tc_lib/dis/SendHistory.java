@@ -0,0 +1,144 @@
+/*******************************************************************************
+ * Copyright (C) Her Majesty the Queen in Right of Canada, 
+ * as represented by the Minister of National Defence, 2018
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package de.fraunhofer.iosb.tc_lib.dis;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Send times of the last pdus of each synthetic entity, to match the reflections of a SUT with their send.
+ * <p>
+ * Each entity has a ring of its last sends, with their pdu timestamp. A
+ * reflection is matched with the send carrying the same timestamp when the SUT
+ * echoes it; once one reflection was matched this way, reflections without a
+ * matching timestamp are ignored. Until then the SUT is assumed to stamp its
+ * own pdus, and a reflection is matched with the oldest send not matched yet.
+ * Either way the sends older than the matched one are taken as lost, as are
+ * the sends pushed out of the ring.
+ * <p>
+ * One thread records the sends, any thread matches the reflections.
+ */
+public class SendHistory {
+
+    /**
+     * Sends of an entity remembered by default
+     */
+    public static final int DEFAULT_DEPTH = 8;
+
+    private static final int LOCK_STRIPES = 64;
+
+    private final int depth;
+    private final int[] timestamps;
+    private final long[] sendNanos;
+
+    /**
+     * Per entity, number of sends recorded and number of sends matched or lost
+     */
+    private final int[] written;
+    private final int[] read;
+
+    private final Object[] locks = new Object[LOCK_STRIPES];
+    private final LongAdder sentCount = new LongAdder();
+    private final LongAdder matchedCount = new LongAdder();
+    private volatile boolean timestampEchoed = false;
+
+    /**
+     * @param entityCount number of synthetic entities
+     * @param depth sends of an entity remembered, a reflection later than this many sends of its entity is not matched
+     */
+    public SendHistory(int entityCount, int depth) {
+        if (depth < 1) {
+            throw new IllegalArgumentException("The depth must be at least 1, not " + depth);
+        }
+        this.depth = depth;
+        this.timestamps = new int[entityCount * depth];
+        this.sendNanos = new long[entityCount * depth];
+        this.written = new int[entityCount];
+        this.read = new int[entityCount];
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    /**
+     * @param index index of the synthetic entity sent
+     * @param timestamp timestamp of the pdu sent
+     * @param nanos {@link System#nanoTime()} of the send
+     */
+    public void record(int index, long timestamp, long nanos) {
+        synchronized (locks[index % LOCK_STRIPES]) {
+            int count = written[index];
+            if (count - read[index] == depth) {
+                read[index]++;
+            }
+            int slot = slot(index, count);
+            timestamps[slot] = (int) timestamp;
+            sendNanos[slot] = nanos;
+            written[index] = count + 1;
+        }
+        sentCount.increment();
+    }
+
+    /**
+     * @param index index of the synthetic entity reflected
+     * @param timestamp timestamp of the reflected pdu
+     * @param receiveNanos {@link System#nanoTime()} of the reception
+     * @return latency of the reflection in nanoseconds, -1 if it matches no send
+     */
+    public long match(int index, long timestamp, long receiveNanos) {
+        long sentNanos;
+        synchronized (locks[index % LOCK_STRIPES]) {
+            int first = read[index];
+            int end = written[index];
+            int matched = -1;
+            for (int count = first; count < end; count++) {
+                if (timestamps[slot(index, count)] == (int) timestamp) {
+                    matched = count;
+                    timestampEchoed = true;
+                    break;
+                }
+            }
+            if (matched < 0) {
+                if (timestampEchoed || first == end) {
+                    return -1;
+                }
+                matched = first;
+            }
+            read[index] = matched + 1;
+            sentNanos = sendNanos[slot(index, matched)];
+        }
+        matchedCount.increment();
+        return receiveNanos - sentNanos;
+    }
+
+    private int slot(int index, int count) {
+        return index * depth + count % depth;
+    }
+
+    /**
+     * @return number of sends recorded
+     */
+    public long getSentCount() {
+        return sentCount.sum();
+    }
+
+    /**
+     * @return number of sends matched with a reflection
+     */
+    public long getMatchedCount() {
+        return matchedCount.sum();
+    }
+}
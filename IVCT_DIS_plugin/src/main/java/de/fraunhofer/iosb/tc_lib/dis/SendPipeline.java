@@ -0,0 +1,244 @@
+/*******************************************************************************
+ * Copyright (C) Her Majesty the Queen in Right of Canada, 
+ * as represented by the Minister of National Defence, 2018
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package de.fraunhofer.iosb.tc_lib.dis;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import edu.nps.moves.dis.Pdu;
+
+/**
+ * Asynchronous front of a {@link DisSender}: producers only queue the pdus, a
+ * dedicated thread drains the queue in batches and sends them.
+ * <p>
+ * The queue is bounded; what a producer does when it is full is set by the
+ * {@link BackpressurePolicy}. A queued pdu is marshalled when it is sent, so
+ * it must not be modified by the producer afterward.
+ * <p>
+ * A pdu that is never sent, whether dropped, rejected or failing to marshal,
+ * is counted as dropped and handed to the drop listener if there is one.
+ */
+public class SendPipeline implements Runnable {
+
+    private static Logger logger = LoggerFactory.getLogger(SendPipeline.class);
+
+    public static final int DEFAULT_CAPACITY = 8192;
+
+    private static final int DRAIN_BATCH_SIZE = 256;
+
+    /**
+     * What a producer does when the queue is full
+     */
+    public enum BackpressurePolicy {
+        /**
+         * Wait for room in the queue
+         */
+        BLOCK,
+        /**
+         * Drop the oldest queued pdu to make room
+         */
+        DROP_OLDEST,
+        /**
+         * Throw an IllegalStateException, the pdu is not queued
+         */
+        FAIL_FAST
+    }
+
+    private final DisSender sender;
+    private final BlockingQueue<Pdu> queue;
+    private final BackpressurePolicy policy;
+
+    /**
+     * Notified of each pdu not sent, null if none
+     */
+    private final Consumer<? super Pdu> dropListener;
+
+    private final AtomicLong queuedCount = new AtomicLong();
+    private final AtomicLong sentCount = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+
+    private volatile boolean running = false;
+    private Thread thread;
+
+    /**
+     * @param sender the sender of the pdus
+     * @param capacity maximum number of pdus waiting to be sent
+     * @param policy what a producer does when the queue is full
+     */
+    public SendPipeline(DisSender sender, int capacity, BackpressurePolicy policy) {
+        this(sender, capacity, policy, null);
+    }
+
+    /**
+     * @param sender the sender of the pdus
+     * @param capacity maximum number of pdus waiting to be sent
+     * @param policy what a producer does when the queue is full
+     * @param dropListener notified of each pdu dropped, rejected or failing to send, on the thread dropping it;
+     * null if none
+     */
+    public SendPipeline(DisSender sender, int capacity, BackpressurePolicy policy, Consumer<? super Pdu> dropListener) {
+        this.sender = sender;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.policy = policy;
+        this.dropListener = dropListener;
+    }
+
+    /**
+     * Start the sender thread
+     */
+    public void start() {
+        running = true;
+        thread = new Thread(this, "DisSendPipeline");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Queue a pdu to be sent. Can be called by any thread.
+     * @param pdu the pdu to send, not to be modified afterward
+     * @throws IllegalStateException if the queue is full with the {@link BackpressurePolicy#FAIL_FAST} policy
+     */
+    public void submit(Pdu pdu) {
+        switch (policy) {
+        case BLOCK:
+            try {
+                queue.put(pdu);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                dropped(pdu);
+                return;
+            }
+            break;
+        case DROP_OLDEST:
+            while (!queue.offer(pdu)) {
+                Pdu oldest = queue.poll();
+                if (oldest != null) {
+                    dropped(oldest);
+                }
+            }
+            break;
+        case FAIL_FAST:
+        default:
+            if (!queue.offer(pdu)) {
+                dropped(pdu);
+                throw new IllegalStateException("The send queue is full (" + (queue.size() + queue.remainingCapacity()) + " pdus)");
+            }
+            break;
+        }
+        queuedCount.incrementAndGet();
+    }
+
+    @Override
+    public void run() {
+        List<Pdu> batch = new ArrayList<>(DRAIN_BATCH_SIZE);
+        while (running || !queue.isEmpty()) {
+            try {
+                Pdu first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+            } catch (InterruptedException e) {
+                // terminating, send what is left
+                running = false;
+                continue;
+            }
+            queue.drainTo(batch, DRAIN_BATCH_SIZE - 1);
+            for (Pdu pdu : batch) {
+                try {
+                    sender.sendPdu(pdu);
+                    sentCount.incrementAndGet();
+                } catch (RuntimeException e) {
+                    // keep the thread alive, blocked producers would wait forever otherwise
+                    logger.error("Error while sending pdu type :{}, pdu dropped", pdu.getPduTypeEnum(), e);
+                    dropped(pdu);
+                }
+            }
+            batch.clear();
+            if (queue.isEmpty()) {
+                // nothing else to bundle with for now
+                sender.flush();
+            }
+        }
+    }
+
+    /**
+     * Stop the sender thread once the queued pdus are sent
+     * @param timeoutMillis maximum time to wait for the queue to be sent
+     */
+    public void terminate(long timeoutMillis) {
+        running = false;
+        if (thread == null) {
+            return;
+        }
+        try {
+            thread.join(timeoutMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (thread.isAlive()) {
+            // not interrupted, that would close the channel of the sender
+            List<Pdu> unsent = new ArrayList<>();
+            queue.drainTo(unsent);
+            unsent.forEach(this::dropped);
+            logger.warn("Send pipeline stopped with {} pdus not sent", unsent.size());
+        }
+    }
+
+    private void dropped(Pdu pdu) {
+        droppedCount.incrementAndGet();
+        if (dropListener != null) {
+            dropListener.accept(pdu);
+        }
+    }
+
+    /**
+     * @return number of pdus accepted in the queue
+     */
+    public long getQueuedCount() {
+        return queuedCount.get();
+    }
+
+    /**
+     * @return number of pdus handed to the sender
+     */
+    public long getSentCount() {
+        return sentCount.get();
+    }
+
+    /**
+     * @return number of pdus dropped or rejected because the queue was full, or failing to send
+     */
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    /**
+     * @return number of pdus waiting to be sent
+     */
+    public int getQueueSize() {
+        return queue.size();
+    }
+}